@@ -9,6 +9,14 @@ package ch.codepanda.gestureimage;
 
 public final class R {
     public static final class attr {
+        /** <p>Must be a boolean value, either "<code>true</code>" or "<code>false</code>".
+<p>This may also be a reference to a resource (in the form
+"<code>@[<i>package</i>:]<i>type</i>:<i>name</i></code>") or
+theme attribute (in the form
+"<code>?[<i>package</i>:][<i>type</i>:]<i>name</i></code>")
+containing a value of this type.
+         */
+        public static final int asyncLoad=0x7f010001;
         /** <p>Must be a string value, using '\\;' to escape characters such as '\\n' or '\\uxxxx' for a unicode character.
 <p>This may also be a reference to a resource (in the form
 "<code>@[<i>package</i>:]<i>type</i>:<i>name</i></code>") or
@@ -138,13 +146,29 @@ containing a value of this type.
            <colgroup align="left" />
            <colgroup align="left" />
            <tr><th>Attribute</th><th>Description</th></tr>
+           <tr><td><code>{@link #ImageMap_asyncLoad ch.codepanda.gestureimage:asyncLoad}</code></td><td></td></tr>
            <tr><td><code>{@link #ImageMap_map ch.codepanda.gestureimage:map}</code></td><td></td></tr>
            </table>
+           @see #ImageMap_asyncLoad
            @see #ImageMap_map
          */
         public static final int[] ImageMap = {
-            0x7f010000
+            0x7f010000, 0x7f010001
         };
+        /**
+          <p>This symbol is the offset where the {@link ch.codepanda.gestureimage.R.attr#asyncLoad}
+          attribute's value can be found in the {@link #ImageMap} array.
+
+
+          <p>Must be a boolean value, either "<code>true</code>" or "<code>false</code>".
+<p>This may also be a reference to a resource (in the form
+"<code>@[<i>package</i>:]<i>type</i>:<i>name</i></code>") or
+theme attribute (in the form
+"<code>?[<i>package</i>:][<i>type</i>:]<i>name</i></code>")
+containing a value of this type.
+          @attr name android:asyncLoad
+        */
+        public static final int ImageMap_asyncLoad = 1;
         /**
           <p>This symbol is the offset where the {@link ch.codepanda.gestureimage.R.attr#map}
           attribute's value can be found in the {@link #ImageMap} array.
@@ -11,8 +11,16 @@ public abstract class BaseGestureDetector {
     protected final Context mContext;
     protected boolean mGestureInProgress;
 
-    protected MotionEvent mPrevEvent;
-    protected MotionEvent mCurrEvent;
+    // The pointers of the previous accepted and of the current sample. Only
+    // the values the detectors need are copied, never the whole event.
+    protected final PointerState mPrev = new PointerState();
+    protected final PointerState mCurr = new PointerState();
+    
+	// Position of the current sample, an index into the batched history of
+	// the event or CURRENT for its latest values.
+    protected static final int CURRENT = -1;
+    protected int mCurrPos = CURRENT;
+    protected boolean mHistoricalEnabled;
     
     protected float mCurrPressure;
     protected float mPrevPressure;
@@ -70,35 +78,80 @@ public abstract class BaseGestureDetector {
 	 */
     protected abstract void handleInProgressEvent(int actionCode, MotionEvent event);
     
+	/**
+	 * Called for every accepted sample of a MOVE event, once per event or once
+	 * per historical sample when enabled.
+	 * 
+	 * @return true if the sample should become the previous one
+	 */
+    protected boolean onMoveSample() {
+    	return false;
+    }
+    
+	/**
+	 * When enabled MOVE events are not only handled by their latest position
+	 * but by every batched historical sample, so fast strokes are followed
+	 * along their whole path. Listeners are called once per sample and should
+	 * only accumulate the deltas; the samples are read in place, nothing is
+	 * copied per sample.
+	 * 
+	 * @param enabled
+	 */
+    public void setHistoricalEnabled(boolean enabled) {
+    	mHistoricalEnabled = enabled;
+    }
+    
+    public boolean isHistoricalEnabled() {
+    	return mHistoricalEnabled;
+    }
+    
+	/**
+	 * Run the samples of a MOVE event through updateStateByEvent and
+	 * onMoveSample, oldest first.
+	 * 
+	 * @param event
+	 */
+    protected void handleMoveEvent(MotionEvent event) {
+    	final int history = mHistoricalEnabled ? event.getHistorySize() : 0;
+    	for (int h = 0; h <= history; h++) {
+    		mCurrPos = h < history ? h : CURRENT;
+    		updateStateByEvent(event);
+    		
+			// Only accept the event if our relative pressure is within
+			// a certain limit. This can help filter shaky data as a
+			// finger is lifted.
+    		if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD && onMoveSample()) {
+    			// later samples compare against this one
+    			mPrev.set(mCurr);
+    		}
+    	}
+    	mCurrPos = CURRENT;
+    }
+    
+	/**
+	 * Take the latest values of the event as the previous state.
+	 * 
+	 * @param event
+	 */
+    protected void setPrevious(MotionEvent event) {
+    	mPrev.set(event, CURRENT);
+    }
     
     protected void updateStateByEvent(MotionEvent curr){
-    	final MotionEvent prev = mPrevEvent;
-    	
-    	// Reset mCurrEvent
-        if (mCurrEvent != null) {
-            mCurrEvent.recycle();
-            mCurrEvent = null;
-        }
-        mCurrEvent = MotionEvent.obtain(curr);
-        
+    	mCurr.set(curr, mCurrPos);
         
         // Delta time
-        mTimeDelta = curr.getEventTime() - prev.getEventTime();
+        mTimeDelta = mCurr.mTime - mPrev.mTime;
 
         // Pressure
-        mCurrPressure = curr.getPressure(curr.getActionIndex());
-        mPrevPressure = prev.getPressure(prev.getActionIndex());
+        mCurrPressure = mCurr.mActionPressure;
+        mPrevPressure = mPrev.mActionPressure;
     }
     
     protected void resetState() {
-        if (mPrevEvent != null) {
-            mPrevEvent.recycle();
-            mPrevEvent = null;
-        }
-        if (mCurrEvent != null) {
-            mCurrEvent.recycle();
-            mCurrEvent = null;
-        }
+    	mPrev.clear();
+    	mCurr.clear();
+        mCurrPos = CURRENT;
         mGestureInProgress = false;
     }
 
@@ -128,7 +181,93 @@ public abstract class BaseGestureDetector {
 	 * @return Current GestureDetector event time in milliseconds.
 	 */
 	public long getEventTime() {
-		return mCurrEvent.getEventTime();
+		return mCurr.mTime;
+	}
+	
+	/**
+	 * Primitive copy of the pointers of one sample. Values are stored in
+	 * arrays indexed by pointer id, mIds lists the ids in pointer index order.
+	 * All arrays are allocated once.
+	 */
+	protected static final class PointerState {
+		// pointer ids are small, the framework keeps them below 32
+		public static final int MAX_POINTER_ID = 31;
+		
+		public final float[] mX = new float[MAX_POINTER_ID + 1];
+		public final float[] mY = new float[MAX_POINTER_ID + 1];
+		public final float[] mPressure = new float[MAX_POINTER_ID + 1];
+		public final int[] mIds = new int[MAX_POINTER_ID + 1];
+		public final boolean[] mDown = new boolean[MAX_POINTER_ID + 1];
+		public int mCount;
+		public float mActionPressure;
+		public long mTime;
+		
+		/**
+		 * @param e
+		 * @param pos
+		 *            - history position or CURRENT
+		 */
+		public void set(MotionEvent e, int pos) {
+			clearDown();
+			final int count = Math.min(e.getPointerCount(), MAX_POINTER_ID + 1);
+			for (int i = 0; i < count; i++) {
+				final int id = e.getPointerId(i) & MAX_POINTER_ID;
+				mIds[i] = id;
+				mDown[id] = true;
+				if (pos == CURRENT) {
+					mX[id] = e.getX(i);
+					mY[id] = e.getY(i);
+					mPressure[id] = e.getPressure(i);
+				} else {
+					mX[id] = e.getHistoricalX(i, pos);
+					mY[id] = e.getHistoricalY(i, pos);
+					mPressure[id] = e.getHistoricalPressure(i, pos);
+				}
+			}
+			mCount = count;
+			mTime = pos == CURRENT ? e.getEventTime() : e.getHistoricalEventTime(pos);
+			final int actionIndex = e.getActionIndex();
+			mActionPressure = actionIndex < count ? mPressure[mIds[actionIndex]] : 0f;
+		}
+		
+		public void set(PointerState other) {
+			clearDown();
+			mCount = other.mCount;
+			for (int i = 0; i < mCount; i++) {
+				final int id = other.mIds[i];
+				mIds[i] = id;
+				mDown[id] = true;
+				mX[id] = other.mX[id];
+				mY[id] = other.mY[id];
+				mPressure[id] = other.mPressure[id];
+			}
+			mActionPressure = other.mActionPressure;
+			mTime = other.mTime;
+		}
+		
+		public void clear() {
+			clearDown();
+			mCount = 0;
+			mActionPressure = 0f;
+			mTime = 0;
+		}
+		
+		private void clearDown() {
+			for (int i = 0; i < mCount; i++) {
+				mDown[mIds[i]] = false;
+			}
+		}
+		
+		/**
+		 * @return x of the pointer at the given index
+		 */
+		public float getX(int index) {
+			return mX[mIds[index]];
+		}
+		
+		public float getY(int index) {
+			return mY[mIds[index]];
+		}
 	}
    
 }
@@ -42,12 +42,11 @@ public class MoveGestureDetector extends BaseGestureDetector {
 	    }
 	}
 
-    private static final PointF FOCUS_DELTA_ZERO = new PointF();
-    
     private final OnMoveGestureListener mListener;
     
-    private PointF mCurrFocusInternal;
-    private PointF mPrevFocusInternal;  
+    // reused for every event to keep the move path allocation free
+    private PointF mCurrFocusInternal = new PointF();
+    private PointF mPrevFocusInternal = new PointF();  
     private PointF mFocusExternal = new PointF();
     private PointF mFocusDeltaExternal = new PointF();
     
@@ -63,7 +62,7 @@ public class MoveGestureDetector extends BaseGestureDetector {
             case MotionEvent.ACTION_DOWN: 
                 resetState(); // In case we missed an UP/CANCEL event
                 
-                mPrevEvent = MotionEvent.obtain(event);
+                setPrevious(event);
                 mTimeDelta = 0;
 
                 updateStateByEvent(event);
@@ -85,35 +84,31 @@ public class MoveGestureDetector extends BaseGestureDetector {
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                updateStateByEvent(event);
-
-				// Only accept the event if our relative pressure is within
-				// a certain limit. This can help filter shaky data as a
-				// finger is lifted.
-                if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD) {
-                    final boolean updatePrevious = mListener.onMove(this);
-                    if (updatePrevious) {
-                        mPrevEvent.recycle();
-                        mPrevEvent = MotionEvent.obtain(event);
-                    }
-                }
+                handleMoveEvent(event);
                 break;
         }
 	}
     
+    @Override
+    protected boolean onMoveSample() {
+    	return mListener.onMove(this);
+    }
+    
     protected void updateStateByEvent(MotionEvent curr) {
     	super.updateStateByEvent(curr);
 
-    	final MotionEvent prev = mPrevEvent;
-    	
         // Focus intenal
-        mCurrFocusInternal = determineFocalPoint(curr);
-        mPrevFocusInternal = determineFocalPoint(prev);
+        determineFocalPoint(mCurr, mCurrFocusInternal);
+        determineFocalPoint(mPrev, mPrevFocusInternal);
         
         // Focus external
         // - Prevent skipping of focus delta when a finger is added or removed
-        boolean mSkipNextMoveEvent = prev.getPointerCount() != curr.getPointerCount();
-        mFocusDeltaExternal = mSkipNextMoveEvent ? FOCUS_DELTA_ZERO : new PointF(mCurrFocusInternal.x - mPrevFocusInternal.x,  mCurrFocusInternal.y - mPrevFocusInternal.y);
+        boolean mSkipNextMoveEvent = mPrev.mCount != mCurr.mCount;
+        if (mSkipNextMoveEvent) {
+        	mFocusDeltaExternal.set(0f, 0f);
+        } else {
+        	mFocusDeltaExternal.set(mCurrFocusInternal.x - mPrevFocusInternal.x,  mCurrFocusInternal.y - mPrevFocusInternal.y);
+        }
         
         // - Don't directly use mFocusInternal (or skipping will occur). Add 
         // 	 unskipped delta values to mFocusExternal instead.
@@ -125,12 +120,12 @@ public class MoveGestureDetector extends BaseGestureDetector {
 	 * Determine (multi)finger focal point (a.k.a. center point between all
 	 * fingers)
 	 * 
-	 * @param MotionEvent e
-	 * @return PointF focal point
+	 * @param PointerState e
+	 * @param PointF out receives the focal point
 	 */
-    private PointF determineFocalPoint(MotionEvent e){
+    private static void determineFocalPoint(PointerState e, PointF out){
     	// Number of fingers on screen
-        final int pCount = e.getPointerCount(); 
+        final int pCount = e.mCount; 
         float x = 0f;
         float y = 0f;
         
@@ -139,7 +134,7 @@ public class MoveGestureDetector extends BaseGestureDetector {
         	y += e.getY(i);
         }
         
-        return new PointF(x/pCount, y/pCount);
+        out.set(x/pCount, y/pCount);
     }
 
     public float getFocusX() {
@@ -57,7 +57,7 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
                 // At least the second finger is on screen now
             	
                 resetState(); // In case we missed an UP/CANCEL event
-                mPrevEvent = MotionEvent.obtain(event);
+                setPrevious(event);
                 mTimeDelta = 0;
                 
                 updateStateByEvent(event);
@@ -98,6 +98,12 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
     protected void handleInProgressEvent(int actionCode, MotionEvent event){ 	
         switch (actionCode) {
             case MotionEvent.ACTION_POINTER_UP:
+                // With enough fingers left the gesture goes on, the lifted
+                // one simply drops out of the pointers matched by id
+                if (event.getPointerCount() - 1 >= 2) {
+                	break;
+                }
+                
                 // Gesture ended but 
                 updateStateByEvent(event);
 
@@ -117,21 +123,15 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                updateStateByEvent(event);
-
-				// Only accept the event if our relative pressure is within
-				// a certain limit. This can help filter shaky data as a
-				// finger is lifted.
-                if (mCurrPressure / mPrevPressure > PRESSURE_THRESHOLD) {
-                    final boolean updatePrevious = mListener.onRotate(this);
-                    if (updatePrevious) {
-                        mPrevEvent.recycle();
-                        mPrevEvent = MotionEvent.obtain(event);
-                    }
-                }
+                handleMoveEvent(event);
                 break;
         }
     }
+    
+    @Override
+    protected boolean onMoveSample() {
+    	return mListener.onRotate(this);
+    }
 
     @Override
     protected void resetState() {
@@ -147,7 +147,6 @@ public class RotateGestureDetector extends TwoFingerGestureDetector {
      * @return The current rotation //difference in degrees.
      */
 	public float getRotationDegreesDelta() {
-		double diffRadians = Math.atan2(mPrevFingerDiffY, mPrevFingerDiffX) - Math.atan2(mCurrFingerDiffY, mCurrFingerDiffX);
-		return (float) (diffRadians * 180 / Math.PI);
+		return (float) (-getRotationDelta() * 180 / Math.PI);
 	}
 }
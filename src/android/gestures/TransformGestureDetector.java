@@ -0,0 +1,259 @@
+package android.gestures;
+
+import android.view.MotionEvent;
+
+/**
+ * Detects move, scale and rotate in one pass over the pointers of an event
+ * and reports them through a single callback. Replaces running a
+ * ScaleGestureDetector, RotateGestureDetector and MoveGestureDetector side by
+ * side, which each copy the event and compute the centroid on their own.
+ *
+ * Only primitive state of the previous event is kept, no events are copied.
+ * Whenever a pointer goes down or up the new pointer set becomes the
+ * reference, so adding or lifting fingers never makes the image jump.
+ */
+public class TransformGestureDetector {
+
+	/**
+	 * Listener which must be implemented which is used by
+	 * TransformGestureDetector to perform callbacks to any implementing class
+	 * which is registered to a TransformGestureDetector via the constructor.
+	 *
+	 * @see TransformGestureDetector.SimpleOnTransformGestureListener
+	 */
+	public interface OnTransformGestureListener {
+		public boolean onTransform(TransformGestureDetector detector);
+		public boolean onTransformBegin(TransformGestureDetector detector);
+		public void onTransformEnd(TransformGestureDetector detector);
+	}
+
+	/**
+	 * Helper class which may be extended and where the methods may be
+	 * implemented. This way it is not necessary to implement all methods
+	 * of OnTransformGestureListener.
+	 */
+	public static class SimpleOnTransformGestureListener implements OnTransformGestureListener {
+		public boolean onTransform(TransformGestureDetector detector) {
+			return false;
+		}
+
+		public boolean onTransformBegin(TransformGestureDetector detector) {
+			return true;
+		}
+
+		public void onTransformEnd(TransformGestureDetector detector) {
+			// Do nothing, overridden implementation may be used
+		}
+	}
+
+	// spans below this are too noisy to derive a scale from (pixels)
+	private static final float MIN_SPAN = 1f;
+
+	private final OnTransformGestureListener mListener;
+	private boolean mGestureInProgress;
+
+	// reference state, updated when the listener consumes an event
+	private float mPrevFocusX, mPrevFocusY;
+	private float mPrevSpan;
+	private float mPrevAngle;
+	private long mPrevTime;
+	private int mPrevId0 = -1, mPrevId1 = -1;
+
+	// current state
+	private float mFocusX, mFocusY;
+	private float mSpan;
+	private float mAngle;
+	private long mTime;
+	private int mId0 = -1, mId1 = -1;
+
+	public TransformGestureDetector(OnTransformGestureListener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Feed every touch event of the view through this method.
+	 *
+	 * @param event
+	 * @return
+	 */
+	public boolean onTouchEvent(MotionEvent event) {
+		final int actionCode = event.getAction() & MotionEvent.ACTION_MASK;
+		switch (actionCode) {
+			case MotionEvent.ACTION_DOWN:
+			case MotionEvent.ACTION_POINTER_DOWN:
+				measure(event, -1);
+				setReference();
+				if (!mGestureInProgress) {
+					mGestureInProgress = mListener.onTransformBegin(this);
+				}
+				break;
+
+			case MotionEvent.ACTION_POINTER_UP:
+				// continue with the remaining pointers as reference
+				measure(event, event.getActionIndex());
+				setReference();
+				break;
+
+			case MotionEvent.ACTION_MOVE:
+				if (!mGestureInProgress) {
+					mGestureInProgress = mListener.onTransformBegin(this);
+					if (mGestureInProgress) {
+						measure(event, -1);
+						setReference();
+					}
+					break;
+				}
+				measure(event, -1);
+				if (mId0 != mPrevId0 || mId1 != mPrevId1) {
+					// the pointers shifted to other indexes, restart from here
+					setReference();
+					break;
+				}
+				if (mListener.onTransform(this)) {
+					setReference();
+				}
+				break;
+
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				if (mGestureInProgress) {
+					mListener.onTransformEnd(this);
+				}
+				mGestureInProgress = false;
+				mPrevId0 = mPrevId1 = mId0 = mId1 = -1;
+				break;
+		}
+		return true;
+	}
+
+	/**
+	 * Centroid, span and angle of all pointers in a single pass. The span is
+	 * the root mean square distance of the pointers to their centroid, taken
+	 * from the sums of the coordinates and their squares.
+	 *
+	 * @param event
+	 * @param skipIndex
+	 *            - pointer going up, or -1
+	 */
+	private void measure(MotionEvent event, int skipIndex) {
+		final int count = event.getPointerCount();
+		double sumX = 0, sumY = 0, sumSq = 0;
+		float x0 = 0f, y0 = 0f, x1 = 0f, y1 = 0f;
+		int used = 0;
+		mId0 = mId1 = -1;
+		for (int i = 0; i < count; i++) {
+			if (i == skipIndex) continue;
+			final float x = event.getX(i);
+			final float y = event.getY(i);
+			sumX += x;
+			sumY += y;
+			sumSq += (double) x * x + (double) y * y;
+			if (used == 0) {
+				x0 = x;
+				y0 = y;
+				mId0 = event.getPointerId(i);
+			} else if (used == 1) {
+				x1 = x;
+				y1 = y;
+				mId1 = event.getPointerId(i);
+			}
+			used++;
+		}
+		mTime = event.getEventTime();
+		if (used == 0) {
+			mSpan = 0f;
+			return;
+		}
+
+		final double cx = sumX / used, cy = sumY / used;
+		mFocusX = (float) cx;
+		mFocusY = (float) cy;
+		mSpan = (float) Math.sqrt(Math.max(0.0, sumSq / used - cx * cx - cy * cy));
+		mAngle = used > 1 ? (float) Math.atan2(y1 - y0, x1 - x0) : 0f;
+	}
+
+	private void setReference() {
+		mPrevFocusX = mFocusX;
+		mPrevFocusY = mFocusY;
+		mPrevSpan = mSpan;
+		mPrevAngle = mAngle;
+		mPrevTime = mTime;
+		mPrevId0 = mId0;
+		mPrevId1 = mId1;
+	}
+
+	/**
+	 * Returns {@code true} if a gesture is currently in progress.
+	 * @return {@code true} if a gesture is currently in progress, {@code false} otherwise.
+	 */
+	public boolean isInProgress() {
+		return mGestureInProgress;
+	}
+
+	public float getFocusX() {
+		return mFocusX;
+	}
+
+	public float getFocusY() {
+		return mFocusY;
+	}
+
+	/**
+	 * @return movement of the pointer centroid since the previous accepted event
+	 */
+	public float getFocusDeltaX() {
+		return mFocusX - mPrevFocusX;
+	}
+
+	public float getFocusDeltaY() {
+		return mFocusY - mPrevFocusY;
+	}
+
+	/**
+	 * @return span ratio to the previous accepted event, 1 with a single pointer
+	 */
+	public float getScaleFactor() {
+		if (mId1 == -1 || mPrevSpan < MIN_SPAN || mSpan < MIN_SPAN) {
+			return 1f;
+		}
+		return mSpan / mPrevSpan;
+	}
+
+	/**
+	 * Same sign as {@link RotateGestureDetector#getRotationDegreesDelta()}.
+	 *
+	 * @return rotation of the first two pointers since the previous accepted
+	 *         event in degrees, 0 with a single pointer
+	 */
+	public float getRotationDegreesDelta() {
+		if (mId1 == -1) {
+			return 0f;
+		}
+		float diff = (float) ((mPrevAngle - mAngle) * 180 / Math.PI);
+		// take the short way around
+		if (diff > 180f) diff -= 360f;
+		else if (diff < -180f) diff += 360f;
+		return diff;
+	}
+
+	/**
+	 * @return current distance between the pointers and their centroid in pixels
+	 */
+	public float getCurrentSpan() {
+		return mSpan;
+	}
+
+	/**
+	 * Return the time difference in milliseconds between the previous accepted
+	 * event and the current event.
+	 *
+	 * @return Time difference since the last move event in milliseconds.
+	 */
+	public long getTimeDelta() {
+		return mTime - mPrevTime;
+	}
+
+	public long getEventTime() {
+		return mTime;
+	}
+}
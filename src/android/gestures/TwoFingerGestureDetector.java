@@ -9,6 +9,10 @@ import android.view.ViewConfiguration;
 /**
  * https://github.com/Almeros/android-gesture-detectors
  * @author Almer Thie (code.almeros.com)
+ * 
+ * Pointers are matched by id between samples, so lifting and adding fingers
+ * never compares different fingers. Span and rotation use all pointers down
+ * in both samples, a gesture may have more than two fingers.
  */
 public abstract class TwoFingerGestureDetector extends BaseGestureDetector {
 
@@ -23,6 +27,12 @@ public abstract class TwoFingerGestureDetector extends BaseGestureDetector {
     
     private float mCurrLen;
     private float mPrevLen;
+    
+    // pointers down in both samples and their centroids
+    private int mCommonCount;
+    private float mPrevFocusX, mPrevFocusY;
+    private float mCurrFocusX, mCurrFocusY;
+    private float mRotationDelta; // radians, clockwise on screen (y points down)
 	
     public TwoFingerGestureDetector(Context context) {
     	super(context);
@@ -37,89 +47,147 @@ public abstract class TwoFingerGestureDetector extends BaseGestureDetector {
 	@Override
 	protected abstract void handleInProgressEvent(int actionCode, MotionEvent event);
 	
-	protected void updateStateByEvent(MotionEvent curr){
-		super.updateStateByEvent(curr);
+	protected void updateStateByEvent(MotionEvent event){
+		super.updateStateByEvent(event);
 		
-		final MotionEvent prev = mPrevEvent;
+		final PointerState prev = mPrev;
+		final PointerState curr = mCurr;
 		
-        mCurrLen = -1;
-        mPrevLen = -1;
-
-        // Previous
-        final float px0 = prev.getX(0);
-        final float py0 = prev.getY(0);
-        final float px1 = prev.getX(1);
-        final float py1 = prev.getY(1);
-        final float pvx = px1 - px0;
-        final float pvy = py1 - py0;
-        mPrevFingerDiffX = pvx;
-        mPrevFingerDiffY = pvy;
-        
-        // Current
-        final float cx0 = curr.getX(0);
-        final float cy0 = curr.getY(0);
-        final float cx1 = curr.getX(1);
-        final float cy1 = curr.getY(1);
-        final float cvx = cx1 - cx0;
-        final float cvy = cy1 - cy0;
-        mCurrFingerDiffX = cvx;
-        mCurrFingerDiffY = cvy;
+		// Centroids of the pointers down in both samples
+		float pcx = 0f, pcy = 0f, ccx = 0f, ccy = 0f;
+		int n = 0;
+		int id0 = -1, id1 = -1;
+		for (int i = 0; i < curr.mCount; i++) {
+			final int id = curr.mIds[i];
+			if (!prev.mDown[id]) continue;
+			pcx += prev.mX[id];
+			pcy += prev.mY[id];
+			ccx += curr.mX[id];
+			ccy += curr.mY[id];
+			if (n == 0) id0 = id;
+			else if (n == 1) id1 = id;
+			n++;
+		}
+		mCommonCount = n;
+		
+		if (n < 2) {
+			// nothing to compare, report no change
+			mPrevFingerDiffX = mCurrFingerDiffX = 0f;
+			mPrevFingerDiffY = mCurrFingerDiffY = 0f;
+			mPrevLen = mCurrLen = 0f;
+			mRotationDelta = 0f;
+			return;
+		}
+		pcx /= n;
+		pcy /= n;
+		ccx /= n;
+		ccy /= n;
+		mPrevFocusX = pcx;
+		mPrevFocusY = pcy;
+		mCurrFocusX = ccx;
+		mCurrFocusY = ccy;
+		
+		// Span is twice the mean distance to the centroid, the finger distance
+		// for two fingers. Rotation is the least squares angle between the
+		// centered samples: atan2(sum of cross products, sum of dot products).
+		float prevDist = 0f, currDist = 0f, cross = 0f, dot = 0f;
+		for (int i = 0; i < curr.mCount; i++) {
+			final int id = curr.mIds[i];
+			if (!prev.mDown[id]) continue;
+			final float px = prev.mX[id] - pcx, py = prev.mY[id] - pcy;
+			final float cx = curr.mX[id] - ccx, cy = curr.mY[id] - ccy;
+			prevDist += FloatMath.sqrt(px*px + py*py);
+			currDist += FloatMath.sqrt(cx*cx + cy*cy);
+			cross += px*cy - py*cx;
+			dot += px*cx + py*cy;
+		}
+		mPrevLen = 2f * prevDist / n;
+		mCurrLen = 2f * currDist / n;
+		mRotationDelta = (float) Math.atan2(cross, dot);
+		
+		// First two shared fingers, by id
+		mPrevFingerDiffX = prev.mX[id1] - prev.mX[id0];
+		mPrevFingerDiffY = prev.mY[id1] - prev.mY[id0];
+		mCurrFingerDiffX = curr.mX[id1] - curr.mX[id0];
+		mCurrFingerDiffY = curr.mY[id1] - curr.mY[id0];
 	}
 	
     /**
-     * Return the current distance between the two pointers forming the
-     * gesture in progress.
+     * Return the current span of the pointers forming the gesture in
+     * progress, the distance between them for two pointers.
      * 
-     * @return Distance between pointers in pixels.
+     * @return Span of the pointers in pixels.
      */
     public float getCurrentSpan() {
-        if (mCurrLen == -1) {
-            final float cvx = mCurrFingerDiffX;
-            final float cvy = mCurrFingerDiffY;
-            mCurrLen = FloatMath.sqrt(cvx*cvx + cvy*cvy);
-        }
         return mCurrLen;
     }
 
     /**
-     * Return the previous distance between the two pointers forming the
-     * gesture in progress.
+     * Return the previous span of the pointers forming the gesture in
+     * progress.
      * 
-     * @return Previous distance between pointers in pixels.
+     * @return Previous span of the pointers in pixels.
      */
     public float getPreviousSpan() {
-        if (mPrevLen == -1) {
-            final float pvx = mPrevFingerDiffX;
-            final float pvy = mPrevFingerDiffY;
-            mPrevLen = FloatMath.sqrt(pvx*pvx + pvy*pvy);
-        }
         return mPrevLen;
     }
     
     /**
-     * MotionEvent has no getRawX(int) method; simulate it pending future API approval. 
+     * @return number of pointers down in both the previous and the current
+     *         sample, the ones span and rotation are computed from
+     */
+    public int getPointerCount() {
+    	return mCommonCount;
+    }
+    
+    public float getFocusX() {
+    	return mCurrFocusX;
+    }
+    
+    public float getFocusY() {
+    	return mCurrFocusY;
+    }
+    
+    public float getPreviousFocusX() {
+    	return mPrevFocusX;
+    }
+    
+    public float getPreviousFocusY() {
+    	return mPrevFocusY;
+    }
+    
+    /**
+     * @return rotation of the pointers from the previous to the current
+     *         sample in radians, clockwise on screen as y points down
+     */
+    protected float getRotationDelta() {
+    	return mRotationDelta;
+    }
+    
+    /**
+     * MotionEvent has no getRawX(int) method below API 29. The screen offset
+     * of the first pointer applies to every pointer of the event as long as
+     * the view is only translated, not scaled or rotated.
      * @param event
      * @param pointerIndex
      * @return
      */
     protected static float getRawX(MotionEvent event, int pointerIndex) {
-        float offset = event.getX() - event.getRawX();
         if(pointerIndex < event.getPointerCount()){
-        	return event.getX(pointerIndex) + offset;
+        	return event.getX(pointerIndex) + event.getRawX() - event.getX();
         } 
         return 0f;
     }
 
     /**
-     * MotionEvent has no getRawY(int) method; simulate it pending future API approval. 
+     * @see #getRawX(MotionEvent, int)
      * @param event
      * @param pointerIndex
      * @return
      */
     protected static float getRawY(MotionEvent event, int pointerIndex) {
-        float offset = event.getY() - event.getRawY();
         if(pointerIndex < event.getPointerCount()){
-        	return event.getY(pointerIndex) + offset;
+        	return event.getY(pointerIndex) + event.getRawY() - event.getY();
         } 
         return 0f;
     }
@@ -1,36 +1,148 @@
 package android.widget;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.gestures.MoveGestureDetector;
 import android.gestures.RotateGestureDetector;
+import android.gestures.TransformGestureDetector;
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Debug;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.image.BitmapCache;
+import android.widget.tile.TileManager;
 
 public class GestureImageView extends ImageView {
 
 	public static final int CLICK = 3; // max delta of pixels between ACTION_DOWN and ACTION_UP (x/y)
 	public static final float MAX_SCALE = 4.0f; 
 	public static final float MIN_SCALE = 0.8f;
+	public static final float OVER_SCALE = 1.25f; // pinch may exceed MIN_SCALE/MAX_SCALE by this factor before snapping back
+	public static final float DOUBLE_TAP_ZOOM = 2.0f;
+	public static final int ZOOM_DURATION = 250; // ms
+	
+	// edge modes for panning
+	public static final int EDGE_NONE = 0; // the image can be moved anywhere
+	public static final int EDGE_STRICT = 1; // the image never leaves its bounds
+	public static final int EDGE_ELASTIC = 2; // the image can be pulled over its bounds and springs back
+	public static final float ELASTIC_RESISTANCE = 0.4f; // share of a move applied over the bounds
+	public static final float ELASTIC_LIMIT = 0.25f; // max pull over the bounds relative to the view size
+	
+	// gesture engines
+	public static final int ENGINE_DETECTORS = 0; // separate scale, rotate and move detectors
+	public static final int ENGINE_TRANSFORM = 1; // single pass TransformGestureDetector
 	
 	private Matrix mMatrix = new Matrix();
     private float mScaleFactor = 1.0f;
+    // scale limits, MIN_SCALE/MAX_SCALE or relative to the fit scale for tiles
+    private float mMinScale = MIN_SCALE;
+    private float mMaxScale = MAX_SCALE;
     private float mRotationDegrees = 0.f;
     private float mFocusX = 0.f;
     private float mFocusY = 0.f;  
     private int mImageHeight, mImageWidth, mViewWidth, mViewHeight;
     
+    // transform values mMatrix was last built from
+    private float mAppliedScaleFactor, mAppliedRotationDegrees, mAppliedFocusX, mAppliedFocusY;
+    
     // for historical event data
     private PointF start = new PointF();
     private PointF curr = new PointF();
+    
+    // scratch objects, the touch path must not allocate per event. This view
+    // and the detectors of android.gestures keep all per event state in
+    // fields, only the platform Scale- and GestureDetector are not covered.
+    private Matrix mInverseMatrix = new Matrix();
+    private float[] mTouchPoint = new float[2];
+    // debuggable builds only, counts the allocations of every MOVE
+    private boolean mAllocationCheck = false;
+
+    // frame synchronized matrix updates
+    private boolean mFrameSync = false;
+    private boolean mCommitScheduled = false;
+    private final Runnable mFrameCommit = new Runnable() {
+		public void run() {
+			mCommitScheduled = false;
+			commitTransform();
+		}
+	};
+
+    // tiled rendering for huge images, replaces the drawable when set
+    private TileManager mTileManager;
+    private final RectF mTileViewport = new RectF();
+    private final TileManager.OnTileLoadedListener mTileListener = new TileManager.OnTileLoadedListener() {
+		public void onTileLoaded() {
+			invalidate();
+		}
+	};
+
+    // image shown through setImageSource, owned by the BitmapCache
+    private Bitmap mSourceBitmap;
+    // what to acquire again when reattached, resource id or file path
+    private int mSourceResId;
+    private String mSourcePath;
+
+    // visible area prediction for prefetching
+    private final ViewportPredictor mPredictor = new ViewportPredictor();
+    private OnViewportChangeListener mViewportListener;
+    private long mPredictionHorizon = 250;
+    private final RectF mVisibleRect = new RectF();
+    private final RectF mPredictedRect = new RectF();
+
+    // pan bounds, reused on every event
+    private int mEdgeMode = EDGE_NONE; // free panning, bounds are opt in
+    private final Matrix mBoundsMatrix = new Matrix();
+    private final RectF mImageRect = new RectF();
+    private final RectF mBoundsRect = new RectF();
+    private float mPanMinX, mPanMaxX, mPanMinY, mPanMaxY; // allowed focus range
+    
+    // fling and zoom animations
+    private GestureDetector mDoubleTapDetector;
+    private VelocityTracker mVelocityTracker;
+    private OverScroller mScroller; // null before Gingerbread, no fling there
+    private int mMinFlingVelocity, mMaxFlingVelocity;
+    private int mLastFlingX, mLastFlingY;
+    private boolean mFlingEnabled = true;
+    private boolean mScaledInGesture = false;
+    private boolean mZooming = false;
+    private long mZoomStart;
+    private float mZoomFrom, mZoomTo, mZoomPivotX, mZoomPivotY;
+    private final Interpolator mZoomInterpolator = new DecelerateInterpolator();
+    private boolean mAnimationPosted = false;
+    private long mAnimationTime = 0; // of the previous step, 0 before the first
+    private final Runnable mAnimation = new Runnable() {
+		public void run() {
+			mAnimationPosted = false;
+			stepAnimation();
+		}
+	};
 
     // gesture detectors
     private ScaleGestureDetector mScaleDetector;
     private RotateGestureDetector mRotateDetector;
     private MoveGestureDetector mMoveDetector;
+    private TransformGestureDetector mTransformDetector;
+    private int mEngine = ENGINE_DETECTORS;
     
     // advanced OnClick listener
     private OnClickListener mClickListener;
@@ -57,6 +169,74 @@ public class GestureImageView extends ImageView {
 		mScaleDetector = new ScaleGestureDetector(context, new ScaleListener());
 		mRotateDetector = new RotateGestureDetector(context, new RotateListener());
 		mMoveDetector = new MoveGestureDetector(context, new MoveListener());
+		mTransformDetector = new TransformGestureDetector(new TransformListener());
+		mDoubleTapDetector = new GestureDetector(context, new DoubleTapListener());
+		
+		// Fling
+		ViewConfiguration config = ViewConfiguration.get(context);
+		mMinFlingVelocity = config.getScaledMinimumFlingVelocity();
+		mMaxFlingVelocity = config.getScaledMaximumFlingVelocity();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			mScroller = new OverScroller(context);
+		}
+	}
+	
+	public void setFlingEnabled(boolean enabled) {
+		mFlingEnabled = enabled;
+	}
+	
+	/**
+	 * How panning behaves at the image borders. With EDGE_STRICT and
+	 * EDGE_ELASTIC an image larger than the view always covers it, a smaller
+	 * one stays inside it.
+	 * 
+	 * @param mode
+	 *            - EDGE_NONE (default), EDGE_STRICT or EDGE_ELASTIC
+	 */
+	public void setEdgeMode(int mode) {
+		if (mode != EDGE_NONE && mode != EDGE_STRICT && mode != EDGE_ELASTIC) {
+			throw new IllegalArgumentException("unknown edge mode: " + mode);
+		}
+		mEdgeMode = mode;
+		if (mode != EDGE_NONE && clampFocus(0f)) {
+			commitTransform();
+		}
+	}
+	
+	public int getEdgeMode() {
+		return mEdgeMode;
+	}
+	
+	/**
+	 * Choose how touch events are turned into scale, rotation and movement.
+	 * ENGINE_TRANSFORM measures all of them in one pass over the pointers
+	 * without copying events, ENGINE_DETECTORS runs the three separate
+	 * detectors.
+	 * 
+	 * @param engine
+	 *            - ENGINE_DETECTORS (default) or ENGINE_TRANSFORM
+	 */
+	public void setGestureEngine(int engine) {
+		if (engine != ENGINE_DETECTORS && engine != ENGINE_TRANSFORM) {
+			throw new IllegalArgumentException("unknown gesture engine: " + engine);
+		}
+		mEngine = engine;
+	}
+	
+	public int getGestureEngine() {
+		return mEngine;
+	}
+	
+	/**
+	 * Let the move and rotate detectors follow every batched historical
+	 * sample of a MOVE event instead of only its latest position. The deltas
+	 * are accumulated and the matrix is still committed once per event.
+	 * 
+	 * @param enabled
+	 */
+	public void setHistoricalEnabled(boolean enabled) {
+		mMoveDetector.setHistoricalEnabled(enabled);
+		mRotateDetector.setHistoricalEnabled(enabled);
 	}
 	
 	public void setOnClickListener(OnClickListener listener) {
@@ -77,14 +257,141 @@ public class GestureImageView extends ImageView {
 		mViewWidth = MeasureSpec.getSize(widthMeasureSpec);
 		mViewHeight = MeasureSpec.getSize(heightMeasureSpec);
 		
+		if (!updateImageSize())
+            return;
+		
+		initialiseImage();
+	}
+	
+	// take the image size from the tile source or the drawable
+	private boolean updateImageSize() {
+		if (mTileManager != null) {
+			mImageWidth = mTileManager.getImageWidth();
+			mImageHeight = mTileManager.getImageHeight();
+			return true;
+		}
+		
 		Drawable drawable = getDrawable(); // if no drawable
         if (drawable == null || drawable.getIntrinsicWidth() == 0 || drawable.getIntrinsicHeight() == 0)
-            return;
+            return false;
      	
 		mImageHeight = drawable.getIntrinsicHeight();
 		mImageWidth = drawable.getIntrinsicWidth();
+		return true;
+	}
+	
+	/**
+	 * Show a large image as tiles decoded on demand instead of a drawable.
+	 * Only the tiles in the viewport are kept in memory, at a sample size
+	 * matching the current scale. Requires Android 2.3.3 (API 10).
+	 * 
+	 * @param path
+	 *            - jpeg or png file
+	 * @throws IOException
+	 */
+	public void setImageRegionSource(String path) throws IOException {
+		setTileManager(new TileManager(BitmapRegionDecoder.newInstance(path, false), mTileListener));
+	}
+	
+	/**
+	 * @see #setImageRegionSource(String)
+	 * @param stream
+	 *            - jpeg or png data, read completely by the decoder
+	 * @throws IOException
+	 */
+	public void setImageRegionSource(InputStream stream) throws IOException {
+		setTileManager(new TileManager(BitmapRegionDecoder.newInstance(stream, false), mTileListener));
+	}
+	
+	/**
+	 * drop the tiled source and free its tiles
+	 */
+	public void clearImageRegionSource() {
+		setTileManager(null);
+	}
+	
+	private void setTileManager(TileManager manager) {
+		if (mTileManager != null) {
+			mTileManager.release();
+		}
+		mTileManager = manager;
+		if (manager != null) {
+			setSourceBitmap(null); // tiles replace the drawable
+			mSourceResId = 0;
+			mSourcePath = null;
+		}
+		onImageChanged();
+	}
+	
+	/**
+	 * Show a drawable resource through the shared {@link BitmapCache}.
+	 * Switching back to an image shown before skips the decode, a new decode
+	 * reuses the memory of evicted images where possible.
+	 * 
+	 * @param resId
+	 */
+	public void setImageSource(int resId) {
+		BitmapCache.register(getContext());
+		mSourceResId = resId;
+		mSourcePath = null;
+		setCachedImage(BitmapCache.acquireResource(getResources(), resId));
+	}
+	
+	/**
+	 * @see #setImageSource(int)
+	 * @param path
+	 *            - image file
+	 */
+	public void setImageSource(String path) {
+		BitmapCache.register(getContext());
+		mSourceResId = 0;
+		mSourcePath = path;
+		setCachedImage(BitmapCache.acquireFile(path));
+	}
+	
+	private void setCachedImage(Bitmap bitmap) {
+		if (mTileManager != null) {
+			mTileManager.release();
+			mTileManager = null;
+		}
+		setSourceBitmap(bitmap);
+		onImageChanged();
+	}
+	
+	// swap the displayed cache bitmap, the old one is handed back to the cache
+	private void setSourceBitmap(Bitmap bitmap) {
+		final Bitmap old = mSourceBitmap;
+		mSourceBitmap = bitmap;
+		setImageDrawable(bitmap != null ? new BitmapDrawable(getResources(), bitmap) : null);
+		if (old != null) {
+			BitmapCache.release(old);
+		}
+	}
+	
+	private void onImageChanged() {
+		if (mViewWidth > 0 && mViewHeight > 0 && updateImageSize()) {
+			initialiseImage();
+		}
+		invalidate();
+	}
+	
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
 		
-		initialiseImage();
+		if (mTileManager != null) {
+			final int left = getPaddingLeft(), top = getPaddingTop();
+			final int save = canvas.save();
+			canvas.translate(left, top); // same as ImageView
+			// the padding strips show tiles too
+			mTileViewport.set(-left, -top, getWidth() - left, getHeight() - top);
+			final boolean fading = mTileManager.draw(canvas, mMatrix, mTileViewport, mScaleFactor);
+			canvas.restoreToCount(save);
+			
+			if (fading) {
+				ViewCompat.postInvalidateOnAnimation(this);
+			}
+		}
 	}
 	
 	// can also be called externally to reset image to original state
@@ -96,6 +403,7 @@ public class GestureImageView extends ImageView {
         float scaleY = (float) mViewHeight / (float) mImageHeight;
         mScaleFactor = Math.min(scaleX, scaleY);
         mMatrix.setScale(mScaleFactor, mScaleFactor);
+        updateScaleLimits(mScaleFactor);
         
         // Center the image
         float redundantYSpace = (float) mViewHeight - (mScaleFactor * (float) mImageHeight);
@@ -111,6 +419,7 @@ public class GestureImageView extends ImageView {
         mRotationDegrees = 0f;
         mMatrix.postRotate(mRotationDegrees);
         
+        markApplied();
         setImageMatrix(mMatrix);
         
         if(mChangeMatrixListener != null) {
@@ -118,6 +427,25 @@ public class GestureImageView extends ImageView {
         }
 	}
 	
+	/**
+	 * A tiled image fits the view at a tiny scale, absolute limits would make
+	 * the first pinch jump far into it and the whole image unreachable. Its
+	 * range spans the whole pyramid, from the base level up to full
+	 * resolution (sample size 1 from scale 0.5 on).
+	 * 
+	 * @param fitScale
+	 *            - scale showing the whole image
+	 */
+	private void updateScaleLimits(float fitScale) {
+		if (mTileManager != null) {
+			mMinScale = Math.min(fitScale * MIN_SCALE, mTileManager.getBaseLevelScale());
+			mMaxScale = Math.max(MAX_SCALE, fitScale);
+		} else {
+			mMinScale = MIN_SCALE;
+			mMaxScale = MAX_SCALE;
+		}
+	}
+	
 	private float getScaledImageCenterX() {
 		return (mImageWidth * mScaleFactor) / 2;
 	}
@@ -126,28 +454,98 @@ public class GestureImageView extends ImageView {
 		return (mImageHeight * mScaleFactor) / 2;
 	}
 	
+	/**
+	 * Count the java allocations made while handling each MOVE event and log
+	 * every event that allocated. Meant to keep the touch path allocation
+	 * free during development, so it only turns on in debuggable builds. The
+	 * platform ScaleGestureDetector and GestureDetector are counted as well.
+	 * 
+	 * @param enabled
+	 */
+	public void setAllocationCheckEnabled(boolean enabled) {
+		enabled &= (getContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+		if (enabled == mAllocationCheck) return;
+		
+		mAllocationCheck = enabled;
+		if (enabled) {
+			Debug.startAllocCounting();
+		} else {
+			Debug.stopAllocCounting();
+		}
+	}
+	
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		mScaleDetector.onTouchEvent(event);
-        mRotateDetector.onTouchEvent(event);
-        mMoveDetector.onTouchEvent(event);
-        
-        float scaledImageCenterX = getScaledImageCenterX();
-        float scaledImageCenterY = getScaledImageCenterY();
+		if (!mAllocationCheck || (event.getAction() & MotionEvent.ACTION_MASK) != MotionEvent.ACTION_MOVE) {
+			return handleTouchEvent(event);
+		}
+		Debug.resetThreadAllocCount();
+		final boolean handled = handleTouchEvent(event);
+		final int allocations = Debug.getThreadAllocCount();
+		if (allocations > 0) {
+			Log.w("GestureImageView", allocations + " allocation(s) while handling a MOVE event");
+		}
+		return handled;
+	}
+	
+	private boolean handleTouchEvent(MotionEvent event) {
+		final int actionCode = event.getAction() & MotionEvent.ACTION_MASK;
+		if (actionCode == MotionEvent.ACTION_DOWN) {
+			// the finger takes over from any running animation
+			stopAnimation();
+			mScaledInGesture = false;
+			if (mVelocityTracker == null) {
+				mVelocityTracker = VelocityTracker.obtain();
+			} else {
+				mVelocityTracker.clear();
+			}
+		}
+		if (mVelocityTracker != null) {
+			mVelocityTracker.addMovement(event);
+		}
+		
+		if (mEngine == ENGINE_TRANSFORM) {
+			mTransformDetector.onTouchEvent(event);
+		} else {
+			mScaleDetector.onTouchEvent(event);
+	        mRotateDetector.onTouchEvent(event);
+	        mMoveDetector.onTouchEvent(event);
+		}
+        mDoubleTapDetector.onTouchEvent(event);
         
-        float deltaX = mFocusX - scaledImageCenterX, deltaY = mFocusY - scaledImageCenterY;
+        if (mEdgeMode == EDGE_STRICT) {
+        	clampFocus(0f);
+        } else if (mEdgeMode == EDGE_ELASTIC) {
+        	clampFocus(ELASTIC_LIMIT);
+        }
         
-        mMatrix.reset();
-        mMatrix.postScale(mScaleFactor, mScaleFactor);
-        mMatrix.postRotate(mRotationDegrees,  scaledImageCenterX, scaledImageCenterY);
-        mMatrix.postTranslate(deltaX, deltaY);
+        // DOWN and stationary MOVEs leave the transform as it is
+        if (isTransformChanged()) {
+        	if (mFrameSync) {
+        		scheduleCommit();
+        	} else {
+        		commitTransform();
+        	}
+        }
         
-        curr = new PointF(event.getX(), event.getY());
+        curr.set(event.getX(), event.getY());
         if(event.getAction() == MotionEvent.ACTION_DOWN) {
         	start.set(curr); // track movement
-        	// not best practice but is faster than batching Historical data (http://developer.android.com/reference/android/view/MotionEvent.html)
         }
         
+		final int action = event.getAction();
+		if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+			// gesture over, the viewport stays where it is
+			mPredictor.reset();
+			dispatchViewport();
+		}
+		
+		if (action == MotionEvent.ACTION_UP) {
+			startReleaseAnimation(true);
+		} else if (action == MotionEvent.ACTION_CANCEL) {
+			startReleaseAnimation(false); // snap back, but no fling
+		}
+		
 		if(event.getAction() == MotionEvent.ACTION_UP) {
 			
 			int xDiff = (int) Math.abs(curr.x - start.x);
@@ -158,24 +556,369 @@ public class GestureImageView extends ImageView {
 				performClick(); // default click
 				
 				if(mClickListener != null) { // advanced click
-					Matrix inverse = new Matrix();
-					mMatrix.invert(inverse);
+					commitTransform(); // map through the latest transform, even mid frame
 					
-					float[] points = new float[] { event.getX(), event.getY() };
-					inverse.mapPoints(points);
+					mTouchPoint[0] = event.getX();
+					mTouchPoint[1] = event.getY();
+					mapViewToImage(mTouchPoint);
 					
-					mClickListener.onClick(this, points[0], points[1]);
+					mClickListener.onClick(this, mTouchPoint[0], mTouchPoint[1]);
 				}
             }
 		}
+
+		return true; // indicate event was handled
+	}
+	
+	/**
+	 * When enabled touch events only accumulate scale, rotation and focus
+	 * changes, the matrix is rebuilt and OnChangeMatrixListener notified at
+	 * most once per display frame (Choreographer on Jelly Bean and newer).
+	 * 
+	 * @param enabled
+	 */
+	public void setFrameSyncEnabled(boolean enabled) {
+		mFrameSync = enabled;
+		if (!enabled) {
+			commitTransform();
+		}
+	}
+	
+	private boolean isTransformChanged() {
+		return mScaleFactor != mAppliedScaleFactor || mRotationDegrees != mAppliedRotationDegrees
+        		|| mFocusX != mAppliedFocusX || mFocusY != mAppliedFocusY;
+	}
+	
+	private void scheduleCommit() {
+		if (!mCommitScheduled) {
+			mCommitScheduled = true;
+			ViewCompat.postOnAnimation(this, mFrameCommit);
+		}
+	}
+	
+	// apply pending transform changes to the view and listener
+	private void commitTransform() {
+		if (!isTransformChanged()) return;
 		
+		updateMatrix();
 		setImageMatrix(mMatrix);
 		
 		if(mChangeMatrixListener != null) {
         	mChangeMatrixListener.onChange(this, getImageMatrix());
         }
-
-		return true; // indicate event was handled
+		
+		dispatchViewport();
+	}
+	
+	// publish the visible and predicted image area
+	private void dispatchViewport() {
+		if (mViewportListener == null) return;
+		
+		mPredictor.predict(mMatrix, getWidth(), getHeight(), mPredictionHorizon, mVisibleRect, mPredictedRect);
+		mViewportListener.onViewportChanged(this, mVisibleRect, mPredictedRect);
+	}
+	
+	public void setOnViewportChangeListener(OnViewportChangeListener listener) {
+		mViewportListener = listener;
+	}
+	
+	/**
+	 * @param horizon
+	 *            - how far ahead the predicted viewport looks, in milliseconds
+	 */
+	public void setPredictionHorizon(long horizon) {
+		mPredictionHorizon = horizon;
+	}
+	
+	/**
+	 * @return the predictor fed by this view's gestures, also holds the
+	 *         prefetch request queue
+	 */
+	public ViewportPredictor getViewportPredictor() {
+		return mPredictor;
+	}
+	
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		// the source was handed back on detach, same size so the transform stays
+		if (mSourceBitmap == null && (mSourceResId != 0 || mSourcePath != null)) {
+			final Bitmap bitmap = mSourcePath != null ? BitmapCache.acquireFile(mSourcePath)
+					: BitmapCache.acquireResource(getResources(), mSourceResId);
+			if (bitmap != null) {
+				mSourceBitmap = bitmap;
+				setImageDrawable(new BitmapDrawable(getResources(), bitmap));
+			}
+		}
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		removeCallbacks(mFrameCommit);
+		mCommitScheduled = false;
+		stopAnimation();
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+		setAllocationCheckEnabled(false); // counting is process wide
+		// a detached view may never come back, don't keep the bitmap in use
+		if (mSourceBitmap != null) {
+			setImageDrawable(null);
+			BitmapCache.release(mSourceBitmap);
+			mSourceBitmap = null;
+		}
+	}
+	
+	// fling with the release velocity and snap the scale back into range
+	private void startReleaseAnimation(boolean fling) {
+		if (mScaledInGesture && (mScaleFactor < mMinScale || mScaleFactor > mMaxScale)) {
+			animateScaleTo(Math.max(mMinScale, Math.min(mScaleFactor, mMaxScale)), getWidth() / 2f, getHeight() / 2f);
+		}
+		
+		if (mScroller == null) {
+			// no spring back either, jump into the bounds
+			if (mEdgeMode == EDGE_ELASTIC && !mZooming && clampFocus(0f)) {
+				commitTransform();
+			}
+			return;
+		}
+		
+		if (fling && mFlingEnabled && mVelocityTracker != null) {
+			mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+			final int vx = (int) mVelocityTracker.getXVelocity();
+			final int vy = (int) mVelocityTracker.getYVelocity();
+			if (Math.abs(vx) > mMinFlingVelocity || Math.abs(vy) > mMinFlingVelocity) {
+				mLastFlingX = Math.round(mFocusX);
+				mLastFlingY = Math.round(mFocusY);
+				if (mEdgeMode == EDGE_NONE) {
+					mScroller.fling(mLastFlingX, mLastFlingY, vx, vy,
+							Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2);
+				} else {
+					computePanRange();
+					// an elastic fling runs over the bounds and springs back by itself
+					final int over = mEdgeMode == EDGE_ELASTIC ? 1 : 0;
+					mScroller.fling(mLastFlingX, mLastFlingY, vx, vy,
+							(int) Math.ceil(mPanMinX), (int) Math.floor(mPanMaxX),
+							(int) Math.ceil(mPanMinY), (int) Math.floor(mPanMaxY),
+							over * (int) (mViewWidth * ELASTIC_LIMIT), over * (int) (mViewHeight * ELASTIC_LIMIT));
+				}
+				postAnimation();
+				return;
+			}
+		}
+		
+		if (mEdgeMode == EDGE_ELASTIC && !mZooming) {
+			computePanRange();
+			mLastFlingX = Math.round(mFocusX);
+			mLastFlingY = Math.round(mFocusY);
+			if (mScroller.springBack(mLastFlingX, mLastFlingY,
+					(int) Math.ceil(mPanMinX), (int) Math.floor(mPanMaxX),
+					(int) Math.ceil(mPanMinY), (int) Math.floor(mPanMaxY))) {
+				postAnimation();
+			}
+		}
+	}
+	
+	/**
+	 * Compute the range of focus positions keeping the image at its bounds,
+	 * from the image rect mapped through the current scale and rotation.
+	 */
+	private void computePanRange() {
+		buildMatrix(mBoundsMatrix);
+		mImageRect.set(0f, 0f, mImageWidth, mImageHeight);
+		mBoundsMatrix.mapRect(mBoundsRect, mImageRect);
+		
+		// smaller than the view: stay inside, larger: cover the view
+		final float dx0 = -mBoundsRect.left, dx1 = mViewWidth - mBoundsRect.right;
+		final float dy0 = -mBoundsRect.top, dy1 = mViewHeight - mBoundsRect.bottom;
+		mPanMinX = mFocusX + Math.min(dx0, dx1);
+		mPanMaxX = mFocusX + Math.max(dx0, dx1);
+		mPanMinY = mFocusY + Math.min(dy0, dy1);
+		mPanMaxY = mFocusY + Math.max(dy0, dy1);
+	}
+	
+	/**
+	 * Move the focus back into the pan range.
+	 * 
+	 * @param slack
+	 *            - allowed distance over the range, relative to the view size
+	 * @return true if the focus was changed
+	 */
+	private boolean clampFocus(float slack) {
+		if (mImageWidth == 0 || mImageHeight == 0) return false;
+		
+		computePanRange();
+		final float sx = mViewWidth * slack, sy = mViewHeight * slack;
+		final float x = Math.max(mPanMinX - sx, Math.min(mFocusX, mPanMaxX + sx));
+		final float y = Math.max(mPanMinY - sy, Math.min(mFocusY, mPanMaxY + sy));
+		if (x == mFocusX && y == mFocusY) return false;
+		
+		mFocusX = x;
+		mFocusY = y;
+		return true;
+	}
+	
+	/**
+	 * Animate the scale factor, keeping the given view point still.
+	 * 
+	 * @param scale
+	 *            - target scale factor
+	 * @param pivotX
+	 *            - in view coordinates
+	 * @param pivotY
+	 */
+	public void animateScaleTo(float scale, float pivotX, float pivotY) {
+		mZoomFrom = mScaleFactor;
+		mZoomTo = scale;
+		mZoomPivotX = pivotX;
+		mZoomPivotY = pivotY;
+		mZoomStart = AnimationUtils.currentAnimationTimeMillis();
+		mZooming = true;
+		postAnimation();
+	}
+	
+	private void stopAnimation() {
+		if (mScroller != null) {
+			mScroller.forceFinished(true);
+		}
+		mZooming = false;
+		mAnimationTime = 0;
+		if (mAnimationPosted) {
+			removeCallbacks(mAnimation);
+			mAnimationPosted = false;
+		}
+	}
+	
+	private void postAnimation() {
+		if (!mAnimationPosted) {
+			mAnimationPosted = true;
+			ViewCompat.postOnAnimation(this, mAnimation);
+		}
+	}
+	
+	// one vsync step of fling and zoom, runs only while something moves
+	private void stepAnimation() {
+		boolean running = false;
+		final long now = AnimationUtils.currentAnimationTimeMillis();
+		final long timeDelta = mAnimationTime != 0 ? now - mAnimationTime : 0;
+		mAnimationTime = now;
+		final float previousScale = mScaleFactor;
+		
+		if (mScroller != null && mScroller.computeScrollOffset()) {
+			final int x = mScroller.getCurrX();
+			final int y = mScroller.getCurrY();
+			mFocusX += x - mLastFlingX;
+			mFocusY += y - mLastFlingY;
+			// the prefetch keeps looking ahead of the fling
+			mPredictor.onMove(x - mLastFlingX, y - mLastFlingY, timeDelta);
+			mLastFlingX = x;
+			mLastFlingY = y;
+			running = !mScroller.isFinished();
+		}
+		
+		if (mZooming) {
+			float t = (float) (AnimationUtils.currentAnimationTimeMillis() - mZoomStart) / ZOOM_DURATION;
+			if (t >= 1f) {
+				t = 1f;
+				mZooming = false;
+			}
+			final float scale = mZoomFrom + (mZoomTo - mZoomFrom) * mZoomInterpolator.getInterpolation(t);
+			final float k = scale / mScaleFactor;
+			// focus is the view position of the image center, scale it around the pivot
+			mFocusX = mZoomPivotX + (mFocusX - mZoomPivotX) * k;
+			mFocusY = mZoomPivotY + (mFocusY - mZoomPivotY) * k;
+			mScaleFactor = scale;
+			mPredictor.onScale(scale / previousScale, timeDelta);
+			running |= mZooming;
+			
+			// the range changes with the scale, the scroller can't follow it
+			if (mEdgeMode != EDGE_NONE) {
+				clampFocus(0f);
+			}
+		} else if (mEdgeMode == EDGE_STRICT) {
+			clampFocus(0f);
+		}
+		
+		commitTransform();
+		
+		if (running) {
+			postAnimation();
+		} else {
+			// came to rest, the viewport stays where it is
+			mAnimationTime = 0;
+			mPredictor.reset();
+			dispatchViewport();
+		}
+	}
+	
+	private void applyScale(float factor, long timeDelta) {
+		final float previous = mScaleFactor;
+		mScaleFactor *= factor;
+		mScaledInGesture = true;
+		
+		// Don't let the object get too small or too large, a little
+		// overshoot is allowed and snaps back on release.
+		mScaleFactor = Math.max(mMinScale / OVER_SCALE, Math.min(mScaleFactor, mMaxScale * OVER_SCALE)); 
+		mPredictor.onScale(mScaleFactor / previous, timeDelta);
+	}
+	
+	private void applyMove(float dx, float dy, long timeDelta) {
+		if (mEdgeMode == EDGE_ELASTIC) {
+			// moves further over the bounds only partly follow the finger
+			computePanRange();
+			if ((dx > 0 && mFocusX >= mPanMaxX) || (dx < 0 && mFocusX <= mPanMinX)) dx *= ELASTIC_RESISTANCE;
+			if ((dy > 0 && mFocusY >= mPanMaxY) || (dy < 0 && mFocusY <= mPanMinY)) dy *= ELASTIC_RESISTANCE;
+		}
+		mFocusX += dx;
+		mFocusY += dy;
+		mPredictor.onMove(dx, dy, timeDelta);
+	}
+	
+	/**
+	 * @return the image to view matrix currently displayed, must not be
+	 *         modified
+	 */
+	protected Matrix getDisplayMatrix() {
+		return mMatrix;
+	}
+	
+	/**
+	 * Map a point from view into image coordinates through the displayed
+	 * matrix.
+	 * 
+	 * @param point
+	 *            - x, y in view coordinates, replaced by image coordinates
+	 */
+	protected void mapViewToImage(float[] point) {
+		mMatrix.invert(mInverseMatrix);
+		mInverseMatrix.mapPoints(point);
+	}
+	
+	// rebuild mMatrix from the current scale, rotation and focus
+	private void updateMatrix() {
+		buildMatrix(mMatrix);
+        markApplied();
+	}
+	
+	private void buildMatrix(Matrix matrix) {
+		float scaledImageCenterX = getScaledImageCenterX();
+        float scaledImageCenterY = getScaledImageCenterY();
+        
+        float deltaX = mFocusX - scaledImageCenterX, deltaY = mFocusY - scaledImageCenterY;
+        
+        matrix.reset();
+        matrix.postScale(mScaleFactor, mScaleFactor);
+        matrix.postRotate(mRotationDegrees,  scaledImageCenterX, scaledImageCenterY);
+        matrix.postTranslate(deltaX, deltaY);
+	}
+	
+	private void markApplied() {
+		mAppliedScaleFactor = mScaleFactor;
+		mAppliedRotationDegrees = mRotationDegrees;
+		mAppliedFocusX = mFocusX;
+		mAppliedFocusY = mFocusY;
 	}
 	
 	public interface OnClickListener {
@@ -186,13 +929,21 @@ public class GestureImageView extends ImageView {
 		public void onChange(GestureImageView view, Matrix matrix);
 	}
 	
+	public interface OnViewportChangeListener {
+		/**
+		 * @param visible
+		 *            - visible image area in image coordinates
+		 * @param predicted
+		 *            - image area expected to be visible after the prediction
+		 *            horizon, equals visible when nothing moves
+		 */
+		public void onViewportChanged(GestureImageView view, RectF visible, RectF predicted);
+	}
+	
 	private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
 		@Override
 		public boolean onScale(ScaleGestureDetector detector) {
-			mScaleFactor *= detector.getScaleFactor(); // scale change since previous event
-			
-			// Don't let the object get too small or too large.
-			mScaleFactor = Math.max(MIN_SCALE, Math.min(mScaleFactor, MAX_SCALE)); 
+			applyScale(detector.getScaleFactor(), detector.getTimeDelta()); // scale change since previous event
 			return true;
 		}
 	}
@@ -205,12 +956,37 @@ public class GestureImageView extends ImageView {
 		}
 	}	
 	
+	private class DoubleTapListener extends GestureDetector.SimpleOnGestureListener {
+		@Override
+		public boolean onDoubleTap(MotionEvent e) {
+			// zoom in around the tap, back out once fully zoomed
+			float target = mScaleFactor * DOUBLE_TAP_ZOOM;
+			if (mScaleFactor >= mMaxScale) {
+				target = mMinScale;
+			}
+			animateScaleTo(Math.min(target, mMaxScale), e.getX(), e.getY());
+			return true;
+		}
+	}
+	
 	private class MoveListener extends MoveGestureDetector.SimpleOnMoveGestureListener {
 		@Override
 		public boolean onMove(MoveGestureDetector detector) {
 			PointF d = detector.getFocusDelta();
-			mFocusX += d.x;
-			mFocusY += d.y;		
+			applyMove(d.x, d.y, detector.getTimeDelta());
+			return true;
+		}
+	}
+	
+	private class TransformListener extends TransformGestureDetector.SimpleOnTransformGestureListener {
+		@Override
+		public boolean onTransform(TransformGestureDetector detector) {
+			final float factor = detector.getScaleFactor();
+			if (factor != 1f) {
+				applyScale(factor, detector.getTimeDelta());
+			}
+			mRotationDegrees -= detector.getRotationDegreesDelta();
+			applyMove(detector.getFocusDeltaX(), detector.getFocusDeltaY(), detector.getTimeDelta());
 			return true;
 		}
 	}
@@ -1,12 +1,28 @@
 package android.widget;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.widget.area.AreaManager;
+import android.widget.area.AreaOverlay;
 
-public class ImageMapGestureView extends GestureImageView implements GestureImageView.OnClickListener {
+public class ImageMapGestureView extends GestureImageView implements GestureImageView.OnClickListener,
+		AreaManager.OnStatesChangedListener {
 
 	private AreaManager mAreaManager;
+	private final float[] mTrackPoint = new float[2];
+	
+	// area drawing, reused every frame
+	private AreaOverlay mOverlay;
+	private final Matrix mOverlayInverse = new Matrix();
+	private final RectF mOverlayVisible = new RectF();
+	private final RectF mOverlayDirty = new RectF();
+	private final int[] mSingleId = new int[1];
+	private final int[] mSingleState = new int[1];
 	
 	public ImageMapGestureView(Context context) {
         super(context);
@@ -15,6 +31,8 @@ public class ImageMapGestureView extends GestureImageView implements GestureImag
 	public ImageMapGestureView(Context context, AttributeSet attrs) {
         super(context, attrs);
         mAreaManager = new AreaManager(context, attrs);
+        mOverlay = new AreaOverlay(mAreaManager);
+        mAreaManager.setOnStatesChangedListener(this);
         setOnClickListener(this);
     }
 	
@@ -25,11 +43,127 @@ public class ImageMapGestureView extends GestureImageView implements GestureImag
 	}
 	
 	public void loadMap(String name) {
-		if(mAreaManager != null && mAreaManager.hasMap()) {
+		// while the initial map loads in the background this one supersedes it
+		if(mAreaManager != null && (mAreaManager.hasMap() || mAreaManager.isLoading())) {
 			mAreaManager.loadMap(name);
 		}
 	}
 	
+	public void loadMapAsync(String name) {
+		if(mAreaManager != null) {
+			mAreaManager.loadMapAsync(name);
+		}
+	}
+	
+	public void setOnMapLoadedListener(AreaManager.OnMapLoadedListener listener) {
+		if(mAreaManager != null) {
+			mAreaManager.setOnMapLoadedListener(listener);
+		}
+	}
+	
+	/**
+	 * Report the areas a single finger enters and leaves while dragging over
+	 * the map, e.g. to highlight them.
+	 * 
+	 * @param listener
+	 */
+	public void setOnAreaEnterExitListener(AreaManager.OnAreaEnterExitListener listener) {
+		if(mAreaManager != null) {
+			mAreaManager.setOnAreaEnterExitListener(listener);
+		}
+	}
+	
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		final boolean handled = super.onTouchEvent(event);
+		
+		if(mAreaManager != null && mAreaManager.hasOnAreaEnterExitListener()) {
+			final int actionCode = event.getAction() & MotionEvent.ACTION_MASK;
+			if((actionCode == MotionEvent.ACTION_DOWN || actionCode == MotionEvent.ACTION_MOVE)
+					&& event.getPointerCount() == 1) {
+				mTrackPoint[0] = event.getX();
+				mTrackPoint[1] = event.getY();
+				mapViewToImage(mTrackPoint);
+				mAreaManager.track(mTrackPoint[0], mTrackPoint[1]);
+			} else {
+				// lifted, cancelled or turned into a pinch
+				mAreaManager.stopTracking();
+			}
+		}
+		return handled;
+	}
+	
+	/**
+	 * Paint for areas in a state, e.g. {@link AreaManager#STATE_SELECTED}.
+	 * States without a paint are not drawn, by default none has one.
+	 * 
+	 * @param state
+	 * @param paint
+	 */
+	public void setAreaStylePaint(int state, Paint paint) {
+		if(mAreaManager != null) {
+			mAreaManager.setStyle(state, paint);
+		}
+	}
+	
+	/**
+	 * Draw an area in another state, only the style changes, the area
+	 * geometry and the image stay as they are.
+	 * 
+	 * @param id
+	 * @param state
+	 */
+	public void setAreaState(int id, int state) {
+		mSingleId[0] = id;
+		mSingleState[0] = state;
+		updateAreaStates(mSingleId, mSingleState);
+	}
+	
+	/**
+	 * @see AreaManager#updateStates(int[], int[])
+	 * @param ids
+	 * @param states
+	 */
+	public void updateAreaStates(int[] ids, int[] states) {
+		if(mAreaManager != null) {
+			mAreaManager.updateStates(ids, states);
+		}
+	}
+	
+	public void onStatesChanged(AreaManager manager, RectF dirty) {
+		if(dirty == null) {
+			invalidate();
+			return;
+		}
+		// only redraw the screen region of the changed areas
+		mOverlayDirty.set(dirty);
+		getDisplayMatrix().mapRect(mOverlayDirty);
+		mOverlayDirty.offset(getPaddingLeft(), getPaddingTop());
+		invalidate((int) Math.floor(mOverlayDirty.left) - 1, (int) Math.floor(mOverlayDirty.top) - 1,
+				(int) Math.ceil(mOverlayDirty.right) + 1, (int) Math.ceil(mOverlayDirty.bottom) + 1); // antialiasing
+	}
+	
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		
+		if(mOverlay != null) {
+			final Matrix matrix = getDisplayMatrix();
+			if(matrix.invert(mOverlayInverse)) {
+				// only areas in the visible part of the image are drawn, the
+				// padding strips included as the canvas is translated by it
+				final int left = getPaddingLeft(), top = getPaddingTop();
+				mOverlayVisible.set(-left, -top, getWidth() - left, getHeight() - top);
+				mOverlayInverse.mapRect(mOverlayVisible);
+				
+				final int save = canvas.save();
+				canvas.translate(getPaddingLeft(), getPaddingTop()); // same as ImageView
+				mOverlay.draw(canvas, matrix, mOverlayVisible);
+				canvas.restoreToCount(save);
+			}
+		}
+	}
+	
 	public AreaManager getAreaManager() {
 		return mAreaManager;
 	}
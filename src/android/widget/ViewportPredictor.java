@@ -0,0 +1,186 @@
+package android.widget;
+
+import java.util.ArrayList;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+/**
+ * Extrapolates the visible image area from the current pan velocity and
+ * scale trend so content can be loaded ahead of the gesture. Also keeps a
+ * priority ordered queue of prefetch requests, requests made while panning
+ * are cancelled once the pan reverses.
+ */
+public class ViewportPredictor {
+
+	// weight of the newest sample in the smoothed velocities
+	private static final float SMOOTHING = 0.5f;
+
+	// view pixels per millisecond
+	private float mVelocityX, mVelocityY;
+	// log of the scale change per millisecond
+	private float mScaleRate;
+
+	private final ArrayList<PrefetchRequest> mRequests = new ArrayList<PrefetchRequest>();
+
+	// scratch objects for predict()
+	private final Matrix mPredicted = new Matrix();
+	private final Matrix mInverse = new Matrix();
+
+	/**
+	 * A unit of work for content expected to become visible. Higher
+	 * priorities are polled first.
+	 */
+	public static abstract class PrefetchRequest {
+		private final int mPriority;
+		// pan direction when the request was made
+		private float mDirectionX, mDirectionY;
+		private volatile boolean mCancelled = false;
+
+		public PrefetchRequest(int priority) {
+			mPriority = priority;
+		}
+
+		public int getPriority() {
+			return mPriority;
+		}
+
+		public boolean isCancelled() {
+			return mCancelled;
+		}
+
+		/**
+		 * the pan turned away from the content of this request, called on the
+		 * ui thread
+		 */
+		protected void onCancel() {
+			// Do nothing, overridden implementation may be used
+		}
+	}
+
+	/**
+	 * feed a pan step
+	 * 
+	 * @param dx
+	 *            - focus delta in view pixels
+	 * @param dy
+	 * @param timeDelta
+	 *            - milliseconds since the previous step
+	 */
+	public void onMove(float dx, float dy, long timeDelta) {
+		if (timeDelta <= 0) return;
+		mVelocityX += SMOOTHING * (dx / timeDelta - mVelocityX);
+		mVelocityY += SMOOTHING * (dy / timeDelta - mVelocityY);
+		cancelOpposingRequests();
+	}
+
+	/**
+	 * feed a scale step
+	 * 
+	 * @param scaleFactor
+	 *            - scale change since the previous step
+	 * @param timeDelta
+	 *            - milliseconds since the previous step
+	 */
+	public void onScale(float scaleFactor, long timeDelta) {
+		if (timeDelta <= 0 || scaleFactor <= 0f) return;
+		mScaleRate += SMOOTHING * ((float) Math.log(scaleFactor) / timeDelta - mScaleRate);
+	}
+
+	/**
+	 * forget the motion, e.g. when the finger is lifted
+	 */
+	public void reset() {
+		mVelocityX = mVelocityY = 0f;
+		mScaleRate = 0f;
+	}
+
+	public float getVelocityX() {
+		return mVelocityX;
+	}
+
+	public float getVelocityY() {
+		return mVelocityY;
+	}
+
+	/**
+	 * compute the visible image area now and after the horizon
+	 * 
+	 * @param imageMatrix
+	 *            - maps image coordinates to view coordinates
+	 * @param viewWidth
+	 * @param viewHeight
+	 * @param horizon
+	 *            - how far to look ahead in milliseconds
+	 * @param visible
+	 *            - receives the visible rect in image coordinates
+	 * @param predicted
+	 *            - receives the predicted rect in image coordinates
+	 */
+	public void predict(Matrix imageMatrix, int viewWidth, int viewHeight, long horizon, RectF visible, RectF predicted) {
+		if (imageMatrix.invert(mInverse)) {
+			visible.set(0, 0, viewWidth, viewHeight);
+			mInverse.mapRect(visible);
+		}
+
+		// the image keeps moving with the finger and scaling around the
+		// view center at the current rates
+		final float scale = (float) Math.exp(mScaleRate * horizon);
+		mPredicted.set(imageMatrix);
+		mPredicted.postTranslate(mVelocityX * horizon, mVelocityY * horizon);
+		mPredicted.postScale(scale, scale, viewWidth / 2f, viewHeight / 2f);
+		if (mPredicted.invert(mInverse)) {
+			predicted.set(0, 0, viewWidth, viewHeight);
+			mInverse.mapRect(predicted);
+		} else {
+			predicted.set(visible);
+		}
+	}
+
+	/**
+	 * queue a prefetch request, it is tied to the current pan direction
+	 * 
+	 * @param request
+	 */
+	public void submit(PrefetchRequest request) {
+		request.mDirectionX = mVelocityX;
+		request.mDirectionY = mVelocityY;
+		// keep the list sorted by priority, equal priorities in submit order
+		int i = mRequests.size();
+		while (i > 0 && mRequests.get(i - 1).mPriority < request.mPriority) {
+			i--;
+		}
+		mRequests.add(i, request);
+	}
+
+	/**
+	 * @return the highest priority request or null
+	 */
+	public PrefetchRequest poll() {
+		return mRequests.isEmpty() ? null : mRequests.remove(0);
+	}
+
+	/**
+	 * cancel all queued requests
+	 */
+	public void cancelAll() {
+		for (int i = mRequests.size() - 1; i >= 0; i--) {
+			cancel(mRequests.remove(i));
+		}
+	}
+
+	private void cancelOpposingRequests() {
+		for (int i = mRequests.size() - 1; i >= 0; i--) {
+			final PrefetchRequest r = mRequests.get(i);
+			if (r.mDirectionX * mVelocityX + r.mDirectionY * mVelocityY < 0f) {
+				mRequests.remove(i);
+				cancel(r);
+			}
+		}
+	}
+
+	private static void cancel(PrefetchRequest request) {
+		request.mCancelled = true;
+		request.onCancel();
+	}
+}
@@ -0,0 +1,261 @@
+package android.widget.area;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import android.content.Context;
+import android.widget.area.AreaManager.Area;
+
+/**
+ * Raster of area positions over the bounds of a map, for hit tests in
+ * constant time. Every cell holds one of:
+ *
+ * <ul>
+ * <li>nothing - no area touches the cell</li>
+ * <li>an area - the area covers the whole cell and no area before it in map
+ * order touches the cell, so it is the hit for every point of the cell</li>
+ * <li>edge - anything else, the caller falls back to the exact tests</li>
+ * </ul>
+ *
+ * Cells are shorts, so maps with more than {@link #MAX_AREAS} areas are not
+ * rasterized. Masks are immutable once built and can be written to a cache
+ * file:
+ *
+ * <pre>
+ * int magic, short version, string key, int areaCount, int signature,
+ * float requestedCellSize, float left, float top, float cellSize,
+ * int columns, int rows, short[columns * rows] cells
+ * </pre>
+ */
+final class AreaHitMask {
+
+	/** lookup result: no area at the point */
+	static final int MISS = -1;
+	/** lookup result: the cell is not decided, test the areas */
+	static final int EDGE = -2;
+
+	static final int MAX_AREAS = Short.MAX_VALUE - 1;
+
+	// cells per axis when the cell size is chosen automatically, and at most
+	private static final int AUTO_CELLS = 512;
+	private static final int MAX_CELLS = 2048;
+
+	private static final short EMPTY_CELL = 0;
+	private static final short EDGE_CELL = -1;
+
+	private static final int MAGIC = 0x474D534B; // "GMSK"
+	private static final short VERSION = 2;
+
+	private final float mRequestedCellSize;
+	private final int mAreaCount;
+	private final int mSignature;
+	private final float mLeft;
+	private final float mTop;
+	private final float mRight;
+	private final float mBottom;
+	private final float mCellSize;
+	private final int mColumns;
+	private final int mRows;
+	// 0 empty, -1 edge, else area position + 1
+	private final short[] mCells;
+
+	private AreaHitMask(float requestedCellSize, int areaCount, int signature, float left, float top,
+			float cellSize, int columns, int rows, short[] cells) {
+		mRequestedCellSize = requestedCellSize;
+		mAreaCount = areaCount;
+		mSignature = signature;
+		mLeft = left;
+		mTop = top;
+		mCellSize = cellSize;
+		mColumns = columns;
+		mRows = rows;
+		mRight = left + columns * cellSize;
+		mBottom = top + rows * cellSize;
+		mCells = cells;
+	}
+
+	/**
+	 * rasterize all areas, may take a while for big maps
+	 *
+	 * @param areas
+	 * @param cellSize
+	 *            - cell edge in image pixels, 0 to pick one from the map size
+	 * @return the mask or null if the map has no or too many areas
+	 */
+	static AreaHitMask build(List<Area> areas, float cellSize) {
+		final int count = areas.size();
+		if (count == 0 || count > MAX_AREAS) {
+			return null;
+		}
+
+		float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			Area a = areas.get(i);
+			left = Math.min(left, a.getBoundLeft());
+			top = Math.min(top, a.getBoundTop());
+			right = Math.max(right, a.getBoundRight());
+			bottom = Math.max(bottom, a.getBoundBottom());
+		}
+		final float extent = Math.max(Math.max(right - left, bottom - top), 1f);
+		float size = cellSize > 0f ? cellSize : Math.max(1f, extent / AUTO_CELLS);
+		// never more than MAX_CELLS per axis, whatever was asked for
+		size = Math.max(size, extent / MAX_CELLS);
+
+		final int columns = Math.max(1, (int) Math.ceil((right - left) / size));
+		final int rows = Math.max(1, (int) Math.ceil((bottom - top) / size));
+		final short[] cells = new short[columns * rows];
+
+		// map order: a cell taken by an earlier area is final
+		for (int p = 0; p < count; p++) {
+			final Area a = areas.get(p);
+			final int c0 = clamp((int) ((a.getBoundLeft() - left) / size), columns);
+			final int c1 = clamp((int) ((a.getBoundRight() - left) / size), columns);
+			final int r0 = clamp((int) ((a.getBoundTop() - top) / size), rows);
+			final int r1 = clamp((int) ((a.getBoundBottom() - top) / size), rows);
+			for (int r = r0; r <= r1; r++) {
+				final float cellTop = top + r * size;
+				for (int c = c0; c <= c1; c++) {
+					final int cell = r * columns + c;
+					if (cells[cell] != EMPTY_CELL) continue;
+
+					final float cellLeft = left + c * size;
+					if (!a.intersects(cellLeft, cellTop, cellLeft + size, cellTop + size)) continue;
+					cells[cell] = a.covers(cellLeft, cellTop, cellLeft + size, cellTop + size)
+							? (short) (p + 1) : EDGE_CELL;
+				}
+			}
+		}
+		return new AreaHitMask(cellSize, count, signature(areas), left, top, size, columns, rows, cells);
+	}
+
+	private static int clamp(int index, int size) {
+		return Math.max(0, Math.min(index, size - 1));
+	}
+
+	/**
+	 * @return area position, {@link #MISS} or {@link #EDGE}
+	 */
+	int lookup(float x, float y) {
+		if (x < mLeft || y < mTop || x > mRight || y > mBottom) {
+			return MISS;
+		}
+		final int c = clamp((int) ((x - mLeft) / mCellSize), mColumns);
+		final int r = clamp((int) ((y - mTop) / mCellSize), mRows);
+		final short v = mCells[r * mColumns + c];
+		if (v == EMPTY_CELL) {
+			return MISS;
+		}
+		return v == EDGE_CELL ? EDGE : v - 1;
+	}
+
+	/**
+	 * @return true if the mask was built for this cell size setting
+	 */
+	boolean matches(float cellSize) {
+		return mRequestedCellSize == cellSize;
+	}
+
+	/**
+	 * fingerprint of the ids and exact shapes, vertices included, detects
+	 * stale cache files
+	 */
+	static int signature(List<Area> areas) {
+		int h = areas.size();
+		for (int i = 0; i < areas.size(); i++) {
+			h = areas.get(i).hashGeometry(h);
+		}
+		return h;
+	}
+
+	/**
+	 * @param key
+	 *            - MapCache key of the map
+	 * @return cache file of the mask for the map and cell size setting
+	 */
+	static File cacheFile(Context context, String key, float cellSize) {
+		return new File(context.getCacheDir(), "hitmask-" + Integer.toHexString(key.hashCode()) + "-"
+				+ Integer.toHexString(Float.floatToIntBits(cellSize)) + ".bin");
+	}
+
+	/**
+	 * write to a temporary file first, a reader never sees half a mask
+	 *
+	 * @param file
+	 * @param key
+	 * @throws IOException
+	 */
+	void write(File file, String key) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			MapFormat.writeString(out, key);
+			out.writeInt(mAreaCount);
+			out.writeInt(mSignature);
+			out.writeFloat(mRequestedCellSize);
+			out.writeFloat(mLeft);
+			out.writeFloat(mTop);
+			out.writeFloat(mCellSize);
+			out.writeInt(mColumns);
+			out.writeInt(mRows);
+			for (short v : mCells) {
+				out.writeShort(v);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("could not replace " + file);
+		}
+	}
+
+	/**
+	 * @return the cached mask or null if there is none for these areas
+	 * @throws IOException
+	 */
+	static AreaHitMask read(File file, String key, List<Area> areas, float cellSize) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		FileInputStream fis = new FileInputStream(file);
+		ByteBuffer in;
+		try {
+			FileChannel channel = fis.getChannel();
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			fis.close();
+		}
+
+		if (in.getInt() != MAGIC || in.getShort() != VERSION || !key.equals(MapFormat.readString(in))) {
+			return null;
+		}
+		final int areaCount = in.getInt();
+		final int signature = in.getInt();
+		final float requested = in.getFloat();
+		if (areaCount != areas.size() || requested != cellSize || signature != signature(areas)) {
+			return null;
+		}
+		final float left = in.getFloat();
+		final float top = in.getFloat();
+		final float size = in.getFloat();
+		final int columns = in.getInt();
+		final int rows = in.getInt();
+		if (columns <= 0 || rows <= 0 || columns > MAX_CELLS + 1 || rows > MAX_CELLS + 1
+				|| in.remaining() < columns * rows * 2) {
+			throw new IOException("corrupt hit mask " + file);
+		}
+		short[] cells = new short[columns * rows];
+		in.asShortBuffer().get(cells);
+		return new AreaHitMask(requested, areaCount, signature, left, top, size, columns, rows, cells);
+	}
+}
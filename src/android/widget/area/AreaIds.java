@@ -0,0 +1,120 @@
+package android.widget.area;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Process wide name to id tables used when loading maps, so that areas don't
+ * need a Resources.getIdentifier lookup each.
+ */
+final class AreaIds {
+
+	// R.id field name -> resource id, built once per package
+	private static final HashMap<String, HashMap<String, Integer>> sResourceIds = new HashMap<String, HashMap<String, Integer>>();
+
+	// area key name -> generated key, for maps without R.id entries
+	private static final HashMap<String, Integer> sKeys = new HashMap<String, Integer>();
+	private static final HashMap<Integer, String> sKeyNames = new HashMap<Integer, String>();
+	// generated keys are negative, numeric ids are only taken when >= 0
+	private static int sNextKey = -1;
+
+	private AreaIds() {
+	}
+
+	/**
+	 * @return "map_Alabama" for "@+id/map_Alabama" and "@id/map_Alabama"
+	 */
+	static String stripPrefix(String id) {
+		if (id.startsWith("@+id/")) {
+			return id.substring(5);
+		}
+		if (id.startsWith("@id/")) {
+			return id.substring(4);
+		}
+		return id;
+	}
+
+	/**
+	 * look up a resource id in the R.id class of the application, which is
+	 * read once with a single reflection pass
+	 * 
+	 * @return the id, 0 if the name is unknown or null if the table could not
+	 *         be built
+	 */
+	static Integer resourceId(Context context, String name) {
+		HashMap<String, Integer> table;
+		synchronized (sResourceIds) {
+			final String pkg = context.getPackageName();
+			table = sResourceIds.get(pkg);
+			if (table == null) {
+				table = buildResourceTable(context, pkg);
+				sResourceIds.put(pkg, table);
+			}
+		}
+		if (table.isEmpty()) {
+			return null;
+		}
+		Integer id = table.get(name);
+		return id != null ? id : Integer.valueOf(0);
+	}
+
+	private static HashMap<String, Integer> buildResourceTable(Context context, String pkg) {
+		HashMap<String, Integer> table = new HashMap<String, Integer>();
+		try {
+			Class<?> ids = Class.forName(pkg + ".R$id", true, context.getClassLoader());
+			for (Field f : ids.getFields()) {
+				if (f.getType() == int.class) {
+					table.put(f.getName(), f.getInt(null));
+				}
+			}
+		} catch (Exception e) {
+			// no generated R class under the package name (renamed package,
+			// library project), callers fall back to Resources
+			Log.w("AreaIds", "no R.id table for " + pkg);
+			table.clear();
+		}
+		return table;
+	}
+
+	/**
+	 * plain non negative integer ids are used as they are, anything else gets
+	 * a stable negative key for the lifetime of the process
+	 */
+	static int key(String id) {
+		final String name = stripPrefix(id);
+		try {
+			final int numeric = Integer.parseInt(name);
+			if (numeric >= 0) {
+				return numeric;
+			}
+			// negative, could clash with a generated key
+		} catch (NumberFormatException nfe) {
+			// not numeric, use a generated key
+		}
+		synchronized (sKeys) {
+			Integer key = sKeys.get(name);
+			if (key == null) {
+				key = sNextKey--;
+				sKeys.put(name, key);
+				sKeyNames.put(key, name);
+			}
+			return key;
+		}
+	}
+
+	static int keyForName(String name) {
+		synchronized (sKeys) {
+			Integer key = sKeys.get(stripPrefix(name));
+			return key != null ? key : 0;
+		}
+	}
+
+	static String nameForKey(int key) {
+		synchronized (sKeys) {
+			return sKeyNames.get(key);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package android.widget.area;
+
+import java.util.Arrays;
+import java.util.List;
+
+import android.widget.area.AreaManager.Area;
+
+/**
+ * Uniform grid over the bounding boxes of a list of areas. Every cell keeps the
+ * positions (in the area list) of all areas whose bounding box overlaps it, in
+ * ascending order, so walking a cell visits candidates in the same order as a
+ * linear scan of the list would.
+ */
+class AreaIndex {
+
+	// upper bound for cells per axis, keeps the index small for huge maps
+	private static final int MAX_CELLS = 128;
+
+	private final float mLeft;
+	private final float mTop;
+	private final float mCellWidth;
+	private final float mCellHeight;
+	private final int mColumns;
+	private final int mRows;
+
+	// per cell list of area positions, grown on demand
+	private final int[][] mCells;
+	private final int[] mCellSizes;
+
+	private int mAreaCount;
+
+	// scratch state of collect(), reused between queries
+	private int[] mCandidates = new int[16];
+	private int[] mVisited = new int[16];
+	private int mStamp;
+
+	/**
+	 * build the grid for all areas currently in the list
+	 *
+	 * @param areas
+	 */
+	AreaIndex(List<Area> areas) {
+		float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+		final int count = areas.size();
+		for (int i = 0; i < count; i++) {
+			Area a = areas.get(i);
+			left = Math.min(left, a.getBoundLeft());
+			top = Math.min(top, a.getBoundTop());
+			right = Math.max(right, a.getBoundRight());
+			bottom = Math.max(bottom, a.getBoundBottom());
+		}
+		if (count == 0) {
+			left = top = 0f;
+			right = bottom = 1f;
+		}
+
+		// roughly one area per cell
+		int cells = (int) Math.ceil(Math.sqrt(count));
+		cells = Math.max(1, Math.min(cells, MAX_CELLS));
+
+		mLeft = left;
+		mTop = top;
+		mColumns = cells;
+		mRows = cells;
+		mCellWidth = Math.max((right - left) / cells, 1f);
+		mCellHeight = Math.max((bottom - top) / cells, 1f);
+		mCells = new int[mColumns * mRows][];
+		mCellSizes = new int[mColumns * mRows];
+
+		for (int i = 0; i < count; i++) {
+			add(areas.get(i), i);
+		}
+	}
+
+	/**
+	 * register an area under its position in the area list. Positions must be
+	 * added in ascending order to keep the "first match wins" semantics.
+	 *
+	 * @param a
+	 * @param position
+	 */
+	void add(Area a, int position) {
+		// areas outside the initial bounds are clamped into the border cells,
+		// lookups are clamped the same way so they are still found
+		final int c0 = column(a.getBoundLeft());
+		final int c1 = column(a.getBoundRight());
+		final int r0 = row(a.getBoundTop());
+		final int r1 = row(a.getBoundBottom());
+
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				final int cell = r * mColumns + c;
+				int[] list = mCells[cell];
+				final int size = mCellSizes[cell];
+				if (list == null) {
+					list = new int[4];
+					mCells[cell] = list;
+				} else if (size == list.length) {
+					int[] grown = new int[size * 2];
+					System.arraycopy(list, 0, grown, 0, size);
+					list = grown;
+					mCells[cell] = list;
+				}
+				list[size] = position;
+				mCellSizes[cell] = size + 1;
+			}
+		}
+		mAreaCount = Math.max(mAreaCount, position + 1);
+	}
+
+	/**
+	 * @return number of area positions covered by this index
+	 */
+	int getAreaCount() {
+		return mAreaCount;
+	}
+
+	/**
+	 * find the first area (in list order) that contains the point
+	 *
+	 * @param areas
+	 *            - the list this index was built from
+	 * @param x
+	 * @param y
+	 * @return list position of the area or -1 if nothing was hit
+	 */
+	int findPosition(List<Area> areas, float x, float y) {
+		final int cell = row(y) * mColumns + column(x);
+		final int[] list = mCells[cell];
+		final int size = mCellSizes[cell];
+		for (int i = 0; i < size; i++) {
+			if (areas.get(list[i]).isInArea(x, y)) {
+				return list[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * collect the positions of all areas whose bounding box overlaps the
+	 * rect, each one once. Only the cells under the rect are visited. The
+	 * order follows the cells, not the area list.
+	 *
+	 * @param areas
+	 *            - the list this index was built from
+	 * @return number of candidates, read them with {@link #candidate(int)}
+	 */
+	int collect(List<Area> areas, float left, float top, float right, float bottom) {
+		if (mVisited.length < mAreaCount) {
+			mVisited = new int[Math.max(mAreaCount, mVisited.length * 2)];
+			mStamp = 0;
+		}
+		if (++mStamp == 0) {
+			// stamp wrapped, forget all old marks
+			Arrays.fill(mVisited, 0);
+			mStamp = 1;
+		}
+		final int stamp = mStamp;
+
+		final int c0 = column(left), c1 = column(right);
+		final int r0 = row(top), r1 = row(bottom);
+		int count = 0;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				final int cell = r * mColumns + c;
+				final int[] list = mCells[cell];
+				final int size = mCellSizes[cell];
+				for (int i = 0; i < size; i++) {
+					final int position = list[i];
+					if (mVisited[position] == stamp) continue;
+					mVisited[position] = stamp;
+
+					final Area a = areas.get(position);
+					if (a.getBoundRight() < left || a.getBoundLeft() > right
+							|| a.getBoundBottom() < top || a.getBoundTop() > bottom) {
+						continue;
+					}
+					if (count == mCandidates.length) {
+						int[] grown = new int[count * 2];
+						System.arraycopy(mCandidates, 0, grown, 0, count);
+						mCandidates = grown;
+					}
+					mCandidates[count++] = position;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param i
+	 *            - below the count returned by the last collect()
+	 * @return the area list position of a candidate
+	 */
+	int candidate(int i) {
+		return mCandidates[i];
+	}
+
+	private int column(float x) {
+		int c = (int) ((x - mLeft) / mCellWidth);
+		return Math.max(0, Math.min(c, mColumns - 1));
+	}
+
+	private int row(float y) {
+		int r = (int) ((y - mTop) / mCellHeight);
+		return Math.max(0, Math.min(r, mRows - 1));
+	}
+}
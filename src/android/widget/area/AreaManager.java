@@ -1,29 +1,113 @@
 package android.widget.area;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.FloatMath;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import ch.codepanda.gestureimage.R;
 
 public class AreaManager {
 
 	private ArrayList<Area> mAreaList = new ArrayList<Area>();
 	private SparseArray<Area> mIdToArea = new SparseArray<Area>();
+	// grid over the area bounds for hit-testing, built once a map is loaded
+	private AreaIndex mIndex;
+	// true while the areas above are copies of a map held by MapCache, whose
+	// index and hit mask are used
+	private boolean mShared = false;
 	private Context mContext;
+	// resource id of maps.xml, looked up once
+	private int mMapsResId;
 	
 	private boolean hasMap = false;
 
+	// taps while a map is loading are ignored
+	public static final int PENDING_TAP_DROP = 0;
+	// the last tap while a map is loading is replayed once it is ready
+	public static final int PENDING_TAP_QUEUE_LAST = 1;
+
+	// parses maps for loadMapAsync off the ui thread, one at a time
+	private static final ExecutorService sLoader = Executors.newSingleThreadExecutor();
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	// incremented per load request, stale background results are dropped
+	private int mGeneration;
+	private boolean mLoading = false;
+	private int mPendingTapPolicy = PENDING_TAP_DROP;
+	private boolean mHasPendingTap = false;
+	private float mPendingTapX;
+	private float mPendingTapY;
+	private OnMapLoadedListener mLoadedListener;
+
+	// area ids are R.id entries of the application
+	public static final int ID_STRATEGY_RESOURCES = 0;
+	// area ids are plain integers or get generated keys, no resources needed
+	public static final int ID_STRATEGY_KEYS = 1;
+
+	// area selection of queryRect
+	/** areas overlapping the rect */
+	public static final int QUERY_INTERSECT = 0;
+	/** areas lying completely inside the rect */
+	public static final int QUERY_CONTAIN = 1;
+
+	private int mIdStrategy = ID_STRATEGY_RESOURCES;
+
+	// optional raster of the areas for constant time hit tests
+	private boolean mHitMaskEnabled = false;
+	private float mHitMaskCellSize = 0f; // 0: chosen from the map size
+	private AreaHitMask mHitMask;
+	private boolean mHitMaskPending = false;
+	private int mHitMaskGeneration;
+	// cached map the areas belong to, null once areas were added by hand
+	private AreaMap mMap;
+
+	// changes whenever the area list does, see AreaOverlay
+	private int mRevision;
+
+	// per area state by list position, selects the style from the palette
+	public static final int STATE_NORMAL = 0;
+	public static final int STATE_SELECTED = 1;
+	// states fit a byte per area
+	public static final int MAX_STATES = 128;
+	private byte[] mStates = new byte[0];
+	private Paint[] mPalette = new Paint[2];
+	private final SparseIntArray mIdToPosition = new SparseIntArray();
+	private int mIdToPositionRevision = -1;
+	private final RectF mDirtyRect = new RectF();
+	private OnStatesChangedListener mStatesListener;
+
+	// streaming hit test state of track()
+	private AreaNeighbours mNeighbours;
+	private int mTrackedPosition = -1;
+	private OnAreaEnterExitListener mEnterExitListener;
+
 	/**
 	 * get the map name from the attributes and load areas from xml
 	 * 
@@ -31,10 +115,17 @@ public class AreaManager {
 	 */
 	public AreaManager(Context context, AttributeSet attrs) {
 		mContext = context;
+		MapCache.register(context);
 		TypedArray a = mContext.obtainStyledAttributes(attrs, R.styleable.ImageMap);
 		String map = a.getString(R.styleable.ImageMap_map);
+		boolean async = a.getBoolean(R.styleable.ImageMap_asyncLoad, false);
+		a.recycle();
 		if (map != null) {
-			loadMap(map);
+			if (async) {
+				loadMapAsync(map);
+			} else {
+				loadMap(map);
+			}
 		}
 	}
 
@@ -44,12 +135,40 @@ public class AreaManager {
 	 * @param map
 	 *            - the name of the map to load
 	 */
-	public void loadMap(String map) {
+	public void loadMap(final String map) {
+		load(cacheKey("xml/" + map), new MapParser() {
+			public AreaMap parse() throws IOException, XmlPullParserException {
+				return parseXmlMap(map);
+			}
+		});
+	}
+
+	/**
+	 * like {@link #loadMap(String)} but parses on a background thread. Until
+	 * the map is published on the ui thread taps are handled according to
+	 * {@link #setPendingTapPolicy(int)}.
+	 * 
+	 * @param map
+	 *            - the name of the map to load
+	 */
+	public void loadMapAsync(final String map) {
+		loadAsync(cacheKey("xml/" + map), new MapParser() {
+			public AreaMap parse() throws IOException, XmlPullParserException {
+				return parseXmlMap(map);
+			}
+		});
+	}
+
+	private AreaMap parseXmlMap(String map) throws IOException, XmlPullParserException {
+		AreaMap result = new AreaMap();
 		boolean loading = false;
-		mAreaList.clear(); // remove any skeletons
-		mIdToArea.clear();
+		int mapDepth = 0;
+		XmlResourceParser xpp = null;
 		try {
-			XmlResourceParser xpp = mContext.getResources().getXml(mContext.getResources().getIdentifier("maps", "xml", mContext.getPackageName()));
+			if (mMapsResId == 0) {
+				mMapsResId = mContext.getResources().getIdentifier("maps", "xml", mContext.getPackageName());
+			}
+			xpp = mContext.getResources().getXml(mMapsResId);
 
 			int eventType = xpp.getEventType();
 			while (eventType != XmlPullParser.END_DOCUMENT) {
@@ -60,15 +179,19 @@ public class AreaManager {
 				} else if (eventType == XmlPullParser.START_TAG) {
 					String tag = xpp.getName();
 
-					if (tag.equalsIgnoreCase("map")) {
-						String mapname = xpp.getAttributeValue(null, "name");
-						if (mapname != null) {
-							if (mapname.equalsIgnoreCase(map)) {
-								loading = true;
+					if (!loading) {
+						// until the requested map starts only <map> tags
+						// matter, the areas of other maps are not looked at
+						if (tag.equalsIgnoreCase("map")) {
+							String mapname = xpp.getAttributeValue(null, "name");
+							if (mapname != null) {
+								if (mapname.equalsIgnoreCase(map)) {
+									loading = true;
+									mapDepth = xpp.getDepth();
+								}
 							}
 						}
-					}
-					if (loading) {
+					} else {
 						if (tag.equalsIgnoreCase("area")) {
 							Area a = null;
 							String shape = xpp.getAttributeValue(null, "shape");
@@ -89,8 +212,9 @@ public class AreaManager {
 							}
 
 							if ((shape != null) && (coords != null)) {
-								a = addShape(shape, name, coords, id);
+								a = createShape(shape, name, coords, id);
 								if (a != null) {
+									result.add(a);
 									// add all of the area tag attributes
 									// so that they are available to the
 									// implementation if needed (see
@@ -107,65 +231,563 @@ public class AreaManager {
 						}
 					}
 				} else if (eventType == XmlPullParser.END_TAG) {
-					String tag = xpp.getName();
-					if (tag.equalsIgnoreCase("map")) {
-						loading = false;
+					if (loading && xpp.getDepth() == mapDepth) {
+						// end of the requested map, the rest of the
+						// document is not needed
+						break;
 					}
 				}
 				eventType = xpp.next();
 			}
-			
-			hasMap = true;
+		} finally {
+			if (xpp != null) {
+				xpp.close();
+			}
+		}
+		result.seal();
+		return result;
+	}
+	
+	/**
+	 * load a map from a raw resource compiled by {@link MapCompiler}. The
+	 * resource is memory mapped when it is stored uncompressed in the apk,
+	 * otherwise it is read in one go.
+	 * 
+	 * @param rawResId
+	 *            - the compiled maps file
+	 * @param map
+	 *            - the name of the map to load
+	 */
+	public void loadBinaryMap(final int rawResId, final String map) {
+		load(cacheKey("raw/" + rawResId + "/" + map), new MapParser() {
+			public AreaMap parse() throws IOException {
+				return parseBinaryMap(openBinary(rawResId), map);
+			}
+		});
+	}
+
+	/**
+	 * background thread variant of {@link #loadBinaryMap(int, String)}
+	 */
+	public void loadBinaryMapAsync(final int rawResId, final String map) {
+		loadAsync(cacheKey("raw/" + rawResId + "/" + map), new MapParser() {
+			public AreaMap parse() throws IOException {
+				return parseBinaryMap(openBinary(rawResId), map);
+			}
+		});
+	}
+
+	/**
+	 * load a map from a file compiled by {@link MapCompiler}, the file is
+	 * memory mapped
+	 * 
+	 * @param file
+	 *            - the compiled maps file
+	 * @param map
+	 *            - the name of the map to load
+	 */
+	public void loadBinaryMap(final File file, final String map) {
+		load(cacheKey("file/" + file.getAbsolutePath() + "/" + map), new MapParser() {
+			public AreaMap parse() throws IOException {
+				return parseBinaryMap(openBinary(file), map);
+			}
+		});
+	}
+
+	private ByteBuffer openBinary(int rawResId) throws IOException {
+		Resources res = mContext.getResources();
+		AssetFileDescriptor afd = null;
+		try {
+			afd = res.openRawResourceFd(rawResId);
+		} catch (Resources.NotFoundException nfe) {
+			// compressed resource, no file descriptor available
+		}
+		if (afd == null) {
+			return readFully(res.openRawResource(rawResId));
+		}
+		FileInputStream fis = afd.createInputStream();
+		try {
+			return fis.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+		} finally {
+			fis.close();
+			afd.close();
+		}
+	}
+
+	private static ByteBuffer openBinary(File file) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			fis.close();
+		}
+	}
+
+	private AreaMap parseBinaryMap(ByteBuffer in, String map) throws IOException {
+		AreaMap result = new AreaMap();
+
+		if (in.getInt() != MapFormat.MAGIC || in.getShort() != MapFormat.VERSION) {
+			throw new IOException("not a compiled map file");
+		}
+		// table of contents: map name and offset of its areas
+		final int mapCount = in.getShort();
+		int offset = -1;
+		for (int m = 0; m < mapCount; m++) {
+			if (offset == -1) {
+				String name = MapFormat.readString(in);
+				int mapOffset = in.getInt();
+				if (name.equalsIgnoreCase(map)) {
+					offset = mapOffset;
+				}
+			} else {
+				MapFormat.skipString(in);
+				in.getInt();
+			}
+		}
+
+		if (offset != -1) {
+			// jump straight to the requested map, other maps are never read
+			in.position(in.position() + offset);
+			final int areaCount = in.getInt();
+			for (int i = 0; i < areaCount; i++) {
+				final byte shape = in.get();
+				final int resID = resolveId(MapFormat.readString(in));
+				final int attrCount = in.getShort();
+				String[] attrs = new String[attrCount * 2];
+				String name = null, title = null, alt = null;
+				for (int j = 0; j < attrs.length; j += 2) {
+					attrs[j] = MapFormat.readString(in);
+					attrs[j + 1] = MapFormat.readString(in);
+					if (attrs[j].equals("name")) {
+						name = attrs[j + 1];
+					} else if (attrs[j].equals("title")) {
+						title = attrs[j + 1];
+					} else if (attrs[j].equals("alt")) {
+						alt = attrs[j + 1];
+					}
+				}
+				// same name lookup order as the xml loader
+				if (name == null) {
+					name = title != null ? title : alt;
+				}
+				final int coordCount = in.getInt();
+				float[] coords = new float[coordCount];
+				// no FloatBuffer view, blocks are not 4 byte aligned to each other
+				for (int j = 0; j < coordCount; j++) {
+					coords[j] = in.getFloat();
+				}
+
+				if (resID == 0) {
+					continue;
+				}
+				Area a = null;
+				if (shape == MapFormat.SHAPE_RECT) {
+					a = new RectArea(resID, name, coords[0], coords[1], coords[2], coords[3]);
+				} else if (shape == MapFormat.SHAPE_CIRCLE) {
+					a = new CircleArea(resID, name, coords[0], coords[1], coords[2]);
+				} else if (shape == MapFormat.SHAPE_POLY) {
+					a = new PolyArea(resID, name, coords, 0, coordCount / 2);
+				}
+				if (a != null) {
+					result.add(a);
+					for (int j = 0; j < attrs.length; j += 2) {
+						a.addValue(attrs[j], attrs[j + 1]);
+					}
+				}
+			}
+		}
+
+		result.seal();
+		return result;
+	}
+
+	private static ByteBuffer readFully(InputStream in) throws IOException {
+		try {
+			byte[] data = new byte[Math.max(in.available(), 4096)];
+			int length = 0;
+			int read;
+			while ((read = in.read(data, length, data.length - length)) != -1) {
+				length += read;
+				if (length == data.length) {
+					byte[] grown = new byte[data.length * 2];
+					System.arraycopy(data, 0, grown, 0, length);
+					data = grown;
+				}
+			}
+			return ByteBuffer.wrap(data, 0, length);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private String cacheKey(String source) {
+		// the same map resolves to different ids per strategy
+		return mIdStrategy + "/" + source;
+	}
+
+	private interface MapParser {
+		AreaMap parse() throws IOException, XmlPullParserException;
+	}
+
+	private void load(String key, MapParser parser) {
+		// a pending background load must not replace this map
+		mGeneration++;
+		setLoading(false);
+		if (useCachedMap(key)) {
+			return;
+		}
+		try {
+			AreaMap map = parser.parse();
+			map.mKey = key;
+			MapCache.put(key, map);
+			useMap(map);
 		} catch (XmlPullParserException xppe) {
 			Log.e("loadMap::XmlPullParserException", "", xppe);
 		} catch (IOException ioe) {
 			Log.e("loadMap::IOException", "", ioe);
 		}
 	}
-	
+
+	private void loadAsync(final String key, final MapParser parser) {
+		final int generation = ++mGeneration;
+		if (useCachedMap(key)) {
+			setLoading(false);
+			if (mLoadedListener != null) {
+				mLoadedListener.onMapLoaded(this);
+			}
+			return;
+		}
+		setLoading(true);
+		sLoader.execute(new Runnable() {
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				AreaMap parsed = null;
+				try {
+					parsed = parser.parse();
+					parsed.mKey = key;
+					MapCache.put(key, parsed);
+				} catch (XmlPullParserException xppe) {
+					Log.e("loadMapAsync::XmlPullParserException", "", xppe);
+				} catch (IOException ioe) {
+					Log.e("loadMapAsync::IOException", "", ioe);
+				}
+				final AreaMap map = parsed;
+				sMainHandler.post(new Runnable() {
+					public void run() {
+						publish(generation, map);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * swap in a map parsed in the background, runs on the ui thread
+	 */
+	private void publish(int generation, AreaMap map) {
+		if (generation != mGeneration) {
+			// superseded by a newer load
+			return;
+		}
+		final boolean replayTap = mHasPendingTap;
+		setLoading(false);
+		if (map != null) {
+			useMap(map);
+		}
+		if (replayTap) {
+			click(mPendingTapX, mPendingTapY);
+		}
+		if (mLoadedListener != null) {
+			mLoadedListener.onMapLoaded(this);
+		}
+	}
+
+	private void setLoading(boolean loading) {
+		mLoading = loading;
+		if (!loading) {
+			mHasPendingTap = false;
+		}
+	}
+
+	/**
+	 * take the areas of a map parsed before, possibly by another AreaManager
+	 * 
+	 * @return true if the map was cached
+	 */
+	private boolean useCachedMap(String key) {
+		AreaMap cached = MapCache.get(key);
+		if (cached == null) {
+			return false;
+		}
+		useMap(cached);
+		return true;
+	}
+
+	private void useMap(AreaMap map) {
+		stopTracking(); // exit event for an area of the old map
+		// own Area objects sharing the cached geometry, so values added to
+		// them don't show up in other views of the same map
+		final int count = map.mAreas.size();
+		mAreaList = new ArrayList<Area>(count);
+		mIdToArea = new SparseArray<Area>(count);
+		for (int i = 0; i < count; i++) {
+			final Area a = map.mAreas.get(i).copy();
+			mAreaList.add(a);
+			mIdToArea.put(a.getId(), a);
+		}
+		mIndex = map.mIndex;
+		mShared = true;
+		hasMap = true;
+		mMap = map;
+		mRevision++;
+		mStates = new byte[0]; // a new map starts in STATE_NORMAL
+		if (mStatesListener != null) {
+			mStatesListener.onStatesChanged(this, null);
+		}
+		mNeighbours = map.mNeighbours;
+		invalidateHitMask();
+		requestHitMask();
+	}
+
+	/**
+	 * @return true while a map is being parsed in the background
+	 */
+	public boolean isLoading() {
+		return mLoading;
+	}
+
+	/**
+	 * Background map load callback interface
+	 */
+	public interface OnMapLoadedListener {
+		/**
+		 * the map requested with loadMapAsync is ready, called on the ui
+		 * thread. If parsing failed the previous areas are kept.
+		 * 
+		 * @param manager
+		 */
+		void onMapLoaded(AreaManager manager);
+	}
+
+	public void setOnMapLoadedListener(OnMapLoadedListener listener) {
+		mLoadedListener = listener;
+	}
+
+	/**
+	 * what to do with taps that arrive while a map is loaded in the background
+	 * 
+	 * @param policy
+	 *            - {@link #PENDING_TAP_DROP} or {@link #PENDING_TAP_QUEUE_LAST}
+	 */
+	public void setPendingTapPolicy(int policy) {
+		mPendingTapPolicy = policy;
+	}
+
 	public boolean hasMap() {
 		return hasMap;
 	}
 
-	public Area addShape(String shape, String name, String coords, String id) {
-		Area a = null;
-		String rid = id.replace("@+id/", "");
-		int resID = 0;
+	/**
+	 * how area id attributes are turned into the ids reported to the click
+	 * handler
+	 * 
+	 * @param strategy
+	 *            - {@link #ID_STRATEGY_RESOURCES} or {@link #ID_STRATEGY_KEYS}
+	 */
+	public void setIdStrategy(int strategy) {
+		mIdStrategy = strategy;
+	}
+
+	/**
+	 * @return the key generated for a non numeric or negative area id under
+	 *         {@link #ID_STRATEGY_KEYS}, 0 if the id was not loaded yet
+	 */
+	public static int getKeyForName(String id) {
+		return AreaIds.keyForName(id);
+	}
 
+	/**
+	 * @return the area id a key was generated for under
+	 *         {@link #ID_STRATEGY_KEYS}
+	 */
+	public static String getNameForKey(int key) {
+		return AreaIds.nameForKey(key);
+	}
+
+	private int resolveId(String id) {
+		if (mIdStrategy == ID_STRATEGY_KEYS) {
+			return AreaIds.key(id);
+		}
+
+		String rid = AreaIds.stripPrefix(id);
+		Integer table = AreaIds.resourceId(mContext, rid);
+		if (table != null) {
+			return table;
+		}
+
+		// no R.id table, look the name up the slow way
+		int resID = 0;
 		try {
 			resID = mContext.getResources().getIdentifier(rid, "id", mContext.getPackageName());
 		} catch (Exception e) {
 			resID = 0;
 		}
+		return resID;
+	}
+
+	public Area addShape(String shape, String name, String coords, String id) {
+		Area a = createShape(shape, name, coords, id);
+		if (a != null) {
+			addArea(a);
+		}
+		return a;
+	}
+
+	private Area createShape(String shape, String name, String coords, String id) {
+		// same rules as MapCompiler, a compiled map loads the same areas
+		if (shape == null || coords == null || id == null) {
+			return null;
+		}
+		final byte type = MapFormat.shapeOf(shape);
+		String[] v = coords.split(",");
+		if (!MapFormat.isValid(type, v.length)) {
+			return null;
+		}
+		Area a = null;
+		int resID = resolveId(id);
 		if (resID != 0) {
-			if (shape.equalsIgnoreCase("rect")) {
-				String[] v = coords.split(",");
-				if (v.length == 4) {
-					a = new RectArea(resID, name, Float.parseFloat(v[0]),
-							Float.parseFloat(v[1]), Float.parseFloat(v[2]),
-							Float.parseFloat(v[3]));
-				}
-			}
-			if (shape.equalsIgnoreCase("circle")) {
-				String[] v = coords.split(",");
-				if (v.length == 3) {
-					a = new CircleArea(resID, name, Float.parseFloat(v[0]),
-							Float.parseFloat(v[1]), Float.parseFloat(v[2]));
-				}
-			}
-			if (shape.equalsIgnoreCase("poly")) {
+			if (type == MapFormat.SHAPE_RECT) {
+				a = new RectArea(resID, name, Float.parseFloat(v[0]),
+						Float.parseFloat(v[1]), Float.parseFloat(v[2]),
+						Float.parseFloat(v[3]));
+			} else if (type == MapFormat.SHAPE_CIRCLE) {
+				a = new CircleArea(resID, name, Float.parseFloat(v[0]),
+						Float.parseFloat(v[1]), Float.parseFloat(v[2]));
+			} else {
 				a = new PolyArea(resID, name, coords);
 			}
-			if (a != null) {
-				addArea(a);
-			}
 		}
 		return a;
 	}
 
 	public void addArea(Area a) {
+		if (mShared) {
+			// the lists are our own, the index of the cached map stays untouched
+			mIndex = null; // rebuilt on the next lookup
+			mShared = false;
+			mMap = null;
+		}
 		mAreaList.add(a);
 		mIdToArea.put(a.getId(), a);
+		if (mIndex != null) {
+			mIndex.add(a, mAreaList.size() - 1);
+		}
+		invalidateHitMask(); // rebuilt on the next lookup
+		mNeighbours = null;
+		mRevision++;
+	}
+
+	/**
+	 * Rasterize the areas into a grid of area positions so most taps are
+	 * answered with one array read. Cells crossed by an area outline still
+	 * run the exact tests. The mask is built in the background and cached on
+	 * disk for loaded maps, until it is ready lookups use the index.
+	 * 
+	 * @param enabled
+	 */
+	public void setHitMaskEnabled(boolean enabled) {
+		mHitMaskEnabled = enabled;
+		if (enabled) {
+			requestHitMask();
+		} else {
+			invalidateHitMask();
+		}
+	}
+
+	/**
+	 * @param cellSize
+	 *            - edge of a mask cell in image pixels, smaller cells mean
+	 *            fewer exact tests but more memory. 0 (default) picks a size
+	 *            from the map bounds.
+	 */
+	public void setHitMaskCellSize(float cellSize) {
+		if (cellSize != mHitMaskCellSize) {
+			mHitMaskCellSize = cellSize;
+			invalidateHitMask();
+			requestHitMask();
+		}
+	}
+
+	/**
+	 * @return true once the hit mask is built and used for lookups
+	 */
+	public boolean isHitMaskReady() {
+		return mHitMask != null;
+	}
+
+	private void invalidateHitMask() {
+		mHitMask = null;
+		mHitMaskPending = false;
+		mHitMaskGeneration++; // a build still running is dropped
+	}
+
+	private void requestHitMask() {
+		if (!mHitMaskEnabled || mHitMask != null || mHitMaskPending || mAreaList.isEmpty()) {
+			return;
+		}
+		final AreaMap map = mMap;
+		final float cellSize = mHitMaskCellSize;
+		if (map != null) {
+			AreaHitMask shared = map.mHitMask;
+			if (shared != null && shared.matches(cellSize)) {
+				mHitMask = shared;
+				return;
+			}
+		}
+
+		mHitMaskPending = true;
+		final int generation = mHitMaskGeneration;
+		// cached maps never change, hand added areas may
+		final List<Area> areas = mShared ? map.mAreas : new ArrayList<Area>(mAreaList);
+		final String key = map != null ? map.mKey : null;
+		final File file = key != null ? AreaHitMask.cacheFile(mContext, key, cellSize) : null;
+		sLoader.execute(new Runnable() {
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				AreaHitMask mask = null;
+				if (file != null) {
+					try {
+						mask = AreaHitMask.read(file, key, areas, cellSize);
+					} catch (IOException ioe) {
+						Log.e("requestHitMask::IOException", "", ioe);
+					}
+				}
+				if (mask == null) {
+					mask = AreaHitMask.build(areas, cellSize);
+					if (mask != null && file != null) {
+						try {
+							mask.write(file, key);
+						} catch (IOException ioe) {
+							Log.e("requestHitMask::IOException", "", ioe);
+						}
+					}
+				}
+				final AreaHitMask result = mask;
+				sMainHandler.post(new Runnable() {
+					public void run() {
+						if (generation != mHitMaskGeneration) {
+							return; // areas changed meanwhile
+						}
+						mHitMaskPending = false;
+						mHitMask = result;
+						if (map != null && result != null) {
+							map.mHitMask = result;
+						}
+					}
+				});
+			}
+		});
 	}
 
 	/**
@@ -187,18 +809,413 @@ public class AreaManager {
 	}
 
 	public void click(float relativeX, float relativeY) {
-		for (Area a : mAreaList) {
+		if (mLoading) {
+			if (mPendingTapPolicy == PENDING_TAP_QUEUE_LAST) {
+				mHasPendingTap = true;
+				mPendingTapX = relativeX;
+				mPendingTapY = relativeY;
+			}
+			return;
+		}
+		// only fire click for one area, the first one in map order
+		Area a = findArea(relativeX, relativeY);
+		if (a != null && mClickHandler != null) {
+			mClickHandler.onClick(a.getId());
+		}
+	}
+
+	/**
+	 * find the first area (in map order) containing the point
+	 * 
+	 * @param relativeX
+	 * @param relativeY
+	 * @return the area or null
+	 */
+	public Area findArea(float relativeX, float relativeY) {
+		final int position = findPosition(relativeX, relativeY);
+		return position >= 0 ? mAreaList.get(position) : null;
+	}
+
+	// list position of the first area containing the point, -1 for none
+	private int findPosition(float relativeX, float relativeY) {
+		final AreaHitMask mask = mHitMask;
+		if (mask != null) {
+			final int hit = mask.lookup(relativeX, relativeY);
+			if (hit == AreaHitMask.MISS) {
+				return -1;
+			}
+			if (hit != AreaHitMask.EDGE) {
+				return hit;
+			}
+		} else if (mHitMaskEnabled) {
+			requestHitMask();
+		}
+		return getIndex().findPosition(mAreaList, relativeX, relativeY);
+	}
+
+	/**
+	 * find all areas containing the point, in map order
+	 * 
+	 * @param relativeX
+	 * @param relativeY
+	 * @param out
+	 *            - receives the area ids
+	 * @return number of hits, can be larger than out, then only the first
+	 *         out.length ids are written
+	 */
+	public int queryPoint(float relativeX, float relativeY, int[] out) {
+		final AreaIndex index = getIndex();
+		final int candidates = index.collect(mAreaList, relativeX, relativeY, relativeX, relativeY);
+		int hits = 0;
+		for (int i = 0; i < candidates; i++) {
+			final Area a = mAreaList.get(index.candidate(i));
 			if (a.isInArea(relativeX, relativeY)) {
-				if (mClickHandler != null) {
-					mClickHandler.onClick(a.getId());
+				if (hits < out.length) {
+					out[hits] = a.getId();
 				}
-				// only fire click for one area
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * find all areas overlapping or inside a rect, e.g. a lasso or the
+	 * visible part of the image. The order of the ids is not defined.
+	 * 
+	 * @param rect
+	 *            - in image coordinates
+	 * @param mode
+	 *            - QUERY_INTERSECT or QUERY_CONTAIN
+	 * @param out
+	 *            - receives the area ids
+	 * @return number of hits, can be larger than out, then only the first
+	 *         out.length ids are written
+	 */
+	public int queryRect(RectF rect, int mode, int[] out) {
+		final AreaIndex index = getIndex();
+		final int candidates = index.collect(mAreaList, rect.left, rect.top, rect.right, rect.bottom);
+		int hits = 0;
+		for (int i = 0; i < candidates; i++) {
+			final Area a = mAreaList.get(index.candidate(i));
+			final boolean hit;
+			if (mode == QUERY_CONTAIN) {
+				// the bounding box is exact enough, every shape touches it
+				hit = a.getBoundLeft() >= rect.left && a.getBoundRight() <= rect.right
+						&& a.getBoundTop() >= rect.top && a.getBoundBottom() <= rect.bottom;
+			} else {
+				hit = a.intersects(rect.left, rect.top, rect.right, rect.bottom);
+			}
+			if (hit) {
+				if (hits < out.length) {
+					out[hits] = a.getId();
+				}
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * find the area closest to a point, for taps slightly next to an area.
+	 * An area containing the point has distance 0, ties go to the first area
+	 * in map order.
+	 * 
+	 * @param relativeX
+	 * @param relativeY
+	 * @param maxDistance
+	 *            - touch tolerance in image coordinates
+	 * @return the area or null if none is within maxDistance
+	 */
+	public Area nearest(float relativeX, float relativeY, float maxDistance) {
+		final AreaIndex index = getIndex();
+		final int candidates = index.collect(mAreaList, relativeX - maxDistance, relativeY - maxDistance,
+				relativeX + maxDistance, relativeY + maxDistance);
+		Area best = null;
+		int bestPosition = Integer.MAX_VALUE;
+		float bestDistance = maxDistance;
+		for (int i = 0; i < candidates; i++) {
+			final int position = index.candidate(i);
+			final Area a = mAreaList.get(position);
+			final float d = a.distanceTo(relativeX, relativeY);
+			if (d < bestDistance || (d == bestDistance && position < bestPosition)) {
+				best = a;
+				bestPosition = position;
+				bestDistance = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Area enter/exit callback interface for {@link AreaManager#track(float, float)}
+	 */
+	public interface OnAreaEnterExitListener {
+		/**
+		 * the tracked point moved into the area with 'id'
+		 * 
+		 * @param id
+		 */
+		void onAreaEnter(int id);
+
+		/**
+		 * the tracked point left the area with 'id'
+		 * 
+		 * @param id
+		 */
+		void onAreaExit(int id);
+	}
+
+	public void setOnAreaEnterExitListener(OnAreaEnterExitListener listener) {
+		mEnterExitListener = listener;
+	}
+
+	public boolean hasOnAreaEnterExitListener() {
+		return mEnterExitListener != null;
+	}
+
+	/**
+	 * Hit test for a stream of points, e.g. a dragging finger. The last hit
+	 * and its neighbours are tested first, which nearly always decides the
+	 * next sample without a search. Reports entering and leaving areas to the
+	 * OnAreaEnterExitListener. Returns the same area as findArea.
+	 * 
+	 * @param relativeX
+	 * @param relativeY
+	 * @return the area at the point or null
+	 */
+	public Area track(float relativeX, float relativeY) {
+		if (mLoading) {
+			return null;
+		}
+		final int last = mTrackedPosition;
+		int position = last >= 0 ? trackNear(last, relativeX, relativeY) : -2;
+		if (position == -2) {
+			// nothing tracked yet or outside the last area's box
+			position = findPosition(relativeX, relativeY);
+		}
+		setTracked(position);
+		return position >= 0 ? mAreaList.get(position) : null;
+	}
+
+	/**
+	 * end tracking, the current area gets its exit event
+	 */
+	public void stopTracking() {
+		setTracked(-1);
+	}
+
+	/**
+	 * @return position of the first area containing the point, -1 for none
+	 *         or -2 if the point is outside the bounding box of the last hit
+	 *         and the neighbours can't decide
+	 */
+	private int trackNear(int last, float x, float y) {
+		final Area area = mAreaList.get(last);
+		if (x < area.getBoundLeft() || x > area.getBoundRight() || y < area.getBoundTop()
+				|| y > area.getBoundBottom()) {
+			return -2;
+		}
+		final AreaNeighbours neighbours = getNeighbours();
+		final boolean inLast = area.isInArea(x, y);
+		// ascending, the first neighbour containing the point wins unless
+		// the last area comes before it
+		final int end = neighbours.end(last);
+		for (int i = neighbours.start(last); i < end; i++) {
+			final int position = neighbours.get(i);
+			if (inLast && position > last) {
 				break;
 			}
+			if (mAreaList.get(position).isInArea(x, y)) {
+				return position;
+			}
+		}
+		return inLast ? last : -1;
+	}
+
+	private void setTracked(int position) {
+		final int previous = mTrackedPosition;
+		if (position == previous) {
+			return;
+		}
+		mTrackedPosition = position;
+		if (mEnterExitListener != null) {
+			if (previous >= 0 && previous < mAreaList.size()) {
+				mEnterExitListener.onAreaExit(mAreaList.get(previous).getId());
+			}
+			if (position >= 0) {
+				mEnterExitListener.onAreaEnter(mAreaList.get(position).getId());
+			}
+		}
+	}
+
+	private AreaNeighbours getNeighbours() {
+		if (mNeighbours == null || mNeighbours.getAreaCount() != mAreaList.size()) {
+			mNeighbours = new AreaNeighbours(mAreaList, getIndex());
+			if (mShared && mMap != null) {
+				mMap.mNeighbours = mNeighbours;
+			}
 		}
+		return mNeighbours;
+	}
+
+	/**
+	 * Area state change callback interface
+	 */
+	public interface OnStatesChangedListener {
+		/**
+		 * areas changed their state or a style was replaced
+		 * 
+		 * @param manager
+		 * @param dirty
+		 *            - image region of the changed areas, including stroke
+		 *            width, or null if all areas may look different
+		 */
+		void onStatesChanged(AreaManager manager, RectF dirty);
+	}
+
+	public void setOnStatesChangedListener(OnStatesChangedListener listener) {
+		mStatesListener = listener;
+	}
+
+	/**
+	 * Style for all areas in a state. States without a style are not drawn,
+	 * by default none has one.
+	 * 
+	 * @param state
+	 *            - 0 to MAX_STATES - 1
+	 * @param paint
+	 *            - null to not draw areas in this state
+	 */
+	public void setStyle(int state, Paint paint) {
+		checkState(state);
+		if (state >= mPalette.length) {
+			Paint[] grown = new Paint[state + 1];
+			System.arraycopy(mPalette, 0, grown, 0, mPalette.length);
+			mPalette = grown;
+		}
+		mPalette[state] = paint;
+		if (mStatesListener != null) {
+			mStatesListener.onStatesChanged(this, null);
+		}
+	}
+
+	/**
+	 * Set the states of many areas at once, e.g. the availability of seats.
+	 * Only areas whose state really changed are reported as dirty, in one
+	 * callback for the whole batch.
+	 * 
+	 * @param ids
+	 *            - area ids, unknown ids are skipped
+	 * @param states
+	 *            - new state per id
+	 */
+	public void updateStates(int[] ids, int[] states) {
+		if (ids.length != states.length) {
+			throw new IllegalArgumentException("ids and states differ in length");
+		}
+		final byte[] current = getStates();
+		final SparseIntArray positions = getIdToPosition();
+		boolean changed = false;
+		float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+		for (int i = 0; i < ids.length; i++) {
+			final int state = states[i];
+			checkState(state);
+			final int position = positions.get(ids[i], -1);
+			if (position < 0 || current[position] == state) {
+				continue;
+			}
+			current[position] = (byte) state;
+			final Area a = mAreaList.get(position);
+			left = Math.min(left, a.getBoundLeft());
+			top = Math.min(top, a.getBoundTop());
+			right = Math.max(right, a.getBoundRight());
+			bottom = Math.max(bottom, a.getBoundBottom());
+			changed = true;
+		}
+		if (changed && mStatesListener != null) {
+			// strokes are centered on the outline
+			final float stroke = getMaxStrokeWidth() / 2;
+			mDirtyRect.set(left - stroke, top - stroke, right + stroke, bottom + stroke);
+			mStatesListener.onStatesChanged(this, mDirtyRect);
+		}
+	}
+
+	/**
+	 * @return state of the area, STATE_NORMAL for unknown ids
+	 */
+	public int getState(int id) {
+		final int position = getIdToPosition().get(id, -1);
+		return position < 0 ? STATE_NORMAL : getStates()[position];
+	}
+
+	private static void checkState(int state) {
+		if (state < 0 || state >= MAX_STATES) {
+			throw new IllegalArgumentException("state out of range: " + state);
+		}
+	}
+
+	private float getMaxStrokeWidth() {
+		float width = 0f;
+		for (Paint p : mPalette) {
+			if (p != null && p.getStyle() != Paint.Style.FILL) {
+				width = Math.max(width, p.getStrokeWidth());
+			}
+		}
+		return width;
+	}
+
+	/**
+	 * @return states by list position, at least as long as the area list
+	 */
+	byte[] getStates() {
+		if (mStates.length < mAreaList.size()) {
+			// areas were appended, they start in STATE_NORMAL
+			byte[] grown = new byte[Math.max(mAreaList.size(), mStates.length * 2)];
+			System.arraycopy(mStates, 0, grown, 0, mStates.length);
+			mStates = grown;
+		}
+		return mStates;
+	}
+
+	Paint[] getPalette() {
+		return mPalette;
+	}
+
+	private SparseIntArray getIdToPosition() {
+		if (mIdToPositionRevision != mRevision) {
+			mIdToPosition.clear();
+			for (int i = 0; i < mAreaList.size(); i++) {
+				mIdToPosition.put(mAreaList.get(i).getId(), i);
+			}
+			mIdToPositionRevision = mRevision;
+		}
+		return mIdToPosition;
+	}
+
+	int getRevision() {
+		return mRevision;
+	}
+
+	List<Area> getAreaList() {
+		return mAreaList;
+	}
+
+	AreaIndex getIndex() {
+		if (mIndex == null || mIndex.getAreaCount() != mAreaList.size()) {
+			// areas were added without a loaded map, index them now
+			mIndex = new AreaIndex(mAreaList);
+		}
+		return mIndex;
 	}
 	
-	public abstract class Area {
+	/**
+	 * Areas are static nested classes, so geometry cached by {@link MapCache}
+	 * holds no AreaManager or Context. Code creating them as inner classes,
+	 * {@code manager.new RectArea(...)}, has to drop the qualifier.
+	 */
+	public static abstract class Area implements Cloneable {
 		private int mResId;
 		private String mName;
 		private HashMap<String, String> mValues;
@@ -236,14 +1253,76 @@ public class AreaManager {
 			return value;
 		}
 
+		/**
+		 * @return a copy sharing the geometry, which never changes, with its
+		 *         own values
+		 */
+		Area copy() {
+			try {
+				Area a = (Area) clone();
+				if (mValues != null) {
+					a.mValues = new HashMap<String, String>(mValues);
+				}
+				return a;
+			} catch (CloneNotSupportedException e) {
+				throw new AssertionError(e);
+			}
+		}
+
 		abstract boolean isInArea(float x, float y);
 
 		abstract float getOriginX();
 
 		abstract float getOriginY();
+
+		// bounding box, used to index the area
+		abstract float getBoundLeft();
+
+		abstract float getBoundTop();
+
+		abstract float getBoundRight();
+
+		abstract float getBoundBottom();
+
+		/**
+		 * @return distance from the point to the shape, 0 inside
+		 */
+		abstract float distanceTo(float x, float y);
+
+		/**
+		 * append the outline of the shape
+		 */
+		abstract void addToPath(Path path);
+
+		/**
+		 * @return true if every point of the rect is inside the shape
+		 */
+		boolean covers(float left, float top, float right, float bottom) {
+			return false;
+		}
+
+		/**
+		 * @return h combined with the id and the exact shape, detects stale
+		 *         cached data
+		 */
+		int hashGeometry(int h) {
+			h = 31 * h + getId();
+			h = 31 * h + Float.floatToIntBits(getBoundLeft());
+			h = 31 * h + Float.floatToIntBits(getBoundTop());
+			h = 31 * h + Float.floatToIntBits(getBoundRight());
+			return 31 * h + Float.floatToIntBits(getBoundBottom());
+		}
+
+		/**
+		 * @return true if the shape overlaps the rect
+		 */
+		boolean intersects(float left, float top, float right, float bottom) {
+			return getBoundRight() >= left && getBoundLeft() <= right
+					&& getBoundBottom() >= top && getBoundTop() <= bottom;
+		}
 	}
 	
-	public class CircleArea extends Area {
+	public static class CircleArea extends Area {
 		private float mPointX;
 		private float mPointY;
 		private float mRadius;
@@ -277,11 +1356,59 @@ public class AreaManager {
 		public float getOriginY() {
 			return mPointY;
 		}
+
+		float getBoundLeft() {
+			return mPointX - mRadius;
+		}
+
+		float getBoundTop() {
+			return mPointY - mRadius;
+		}
+
+		float getBoundRight() {
+			return mPointX + mRadius;
+		}
+
+		float getBoundBottom() {
+			return mPointY + mRadius;
+		}
+
+		float distanceTo(float x, float y) {
+			float deltaX = mPointX - x;
+			float deltaY = mPointY - y;
+			return Math.max(0f, FloatMath.sqrt((deltaX * deltaX) + (deltaY * deltaY)) - mRadius);
+		}
+
+		void addToPath(Path path) {
+			path.addCircle(mPointX, mPointY, mRadius, Path.Direction.CW);
+		}
+
+		@Override
+		int hashGeometry(int h) {
+			// the radius also tells a circle from a rect with the same bounds
+			return 31 * super.hashGeometry(h) + Float.floatToIntBits(mRadius);
+		}
+
+		@Override
+		boolean covers(float left, float top, float right, float bottom) {
+			// convex, the corners decide
+			return isInArea(left, top) && isInArea(right, top) && isInArea(left, bottom)
+					&& isInArea(right, bottom);
+		}
+
+		@Override
+		boolean intersects(float left, float top, float right, float bottom) {
+			// closest point of the rect to the center
+			float deltaX = mPointX - Math.max(left, Math.min(mPointX, right));
+			float deltaY = mPointY - Math.max(top, Math.min(mPointY, bottom));
+			return (deltaX * deltaX) + (deltaY * deltaY) <= mRadius * mRadius;
+		}
 	}
 	
-	public class PolyArea extends Area {
-		private ArrayList<Integer> mPointsX = new ArrayList<Integer>();
-		private ArrayList<Integer> mPointsY = new ArrayList<Integer>();
+	public static class PolyArea extends Area {
+		// packed vertices, point zero is repeated at index mTotalPoints
+		private float[] mPointsX;
+		private float[] mPointsY;
 
 		// centroid point for this poly
 		private float mPointX;
@@ -291,34 +1418,64 @@ public class AreaManager {
 		private int mTotalPoints;
 
 		// bounding box
-		private int mBoundTop = -1;
-		private int mBoundBottom = -1;
-		private int mBoundLeft = -1;
-		private int mBoundRight = -1;
+		private float mBoundTop;
+		private float mBoundBottom;
+		private float mBoundLeft;
+		private float mBoundRight;
 
 		public PolyArea(int id, String name, String coords) {
 			super(id, name);
 
-			// split the list of coordinates into points of the
-			// polygon and compute a bounding box
+			// split the list of coordinates into points of the polygon
 			String[] v = coords.split(",");
+			mTotalPoints = v.length / 2;
+			mPointsX = new float[mTotalPoints + 1];
+			mPointsY = new float[mTotalPoints + 1];
 
-			for (int i = 0; i < v.length - 1; i += 2) {
-				int x = Integer.parseInt(v[i]);
-				int y = Integer.parseInt(v[i + 1]);
-				mPointsX.add(x);
-				mPointsY.add(y);
-				mBoundTop = (mBoundTop == -1) ? y : Math.min(mBoundTop, y);
-				mBoundBottom = (mBoundBottom == -1) ? y : Math.max(mBoundBottom, y);
-				mBoundLeft = (mBoundLeft == -1) ? x : Math.min(mBoundLeft, x);
-				mBoundRight = (mBoundRight == -1) ? x : Math.max(mBoundRight, x);
+			for (int i = 0; i < mTotalPoints; i++) {
+				mPointsX[i] = Float.parseFloat(v[2 * i].trim());
+				mPointsY[i] = Float.parseFloat(v[2 * i + 1].trim());
 			}
-			mTotalPoints = mPointsX.size();
+			init();
+		}
+
+		/**
+		 * @param coords
+		 *            - interleaved x,y pairs
+		 * @param offset
+		 *            - index of the first x value in coords
+		 * @param count
+		 *            - number of points
+		 */
+		public PolyArea(int id, String name, float[] coords, int offset, int count) {
+			super(id, name);
+
+			mTotalPoints = count;
+			mPointsX = new float[mTotalPoints + 1];
+			mPointsY = new float[mTotalPoints + 1];
+
+			for (int i = 0; i < mTotalPoints; i++) {
+				mPointsX[i] = coords[offset + 2 * i];
+				mPointsY[i] = coords[offset + 2 * i + 1];
+			}
+			init();
+		}
 
+		private void init() {
 			// add point zero to the end to make
 			// computing area and centroid easier
-			mPointsX.add(mPointsX.get(0));
-			mPointsY.add(mPointsY.get(0));
+			mPointsX[mTotalPoints] = mPointsX[0];
+			mPointsY[mTotalPoints] = mPointsY[0];
+
+			// compute a bounding box
+			mBoundLeft = mBoundRight = mPointsX[0];
+			mBoundTop = mBoundBottom = mPointsY[0];
+			for (int i = 1; i < mTotalPoints; i++) {
+				mBoundLeft = Math.min(mBoundLeft, mPointsX[i]);
+				mBoundRight = Math.max(mBoundRight, mPointsX[i]);
+				mBoundTop = Math.min(mBoundTop, mPointsY[i]);
+				mBoundBottom = Math.max(mBoundBottom, mPointsY[i]);
+			}
 
 			computeCentroid();
 		}
@@ -332,10 +1489,11 @@ public class AreaManager {
 
 		// return area of polygon
 		public double getArea() {
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
 			double sum = 0.0;
 			for (int i = 0, j = 1; i < mTotalPoints; i++, j++) {
-				sum += (mPointsX.get(i) * mPointsY.get(j))
-						- (mPointsY.get(i) * mPointsX.get(j));
+				sum += ((double) px[i] * py[j]) - ((double) py[i] * px[j]);
 			}
 			sum *= 0.5;
 			return Math.abs(sum);
@@ -343,16 +1501,13 @@ public class AreaManager {
 
 		// compute the centroid of the polygon
 		public void computeCentroid() {
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
 			double cx = 0.0, cy = 0.0;
 			for (int i = 0; i < mTotalPoints; i++) {
-				cx = cx
-						+ (mPointsX.get(i) + mPointsX.get(i + 1))
-						* (mPointsY.get(i) * mPointsX.get(i + 1) - mPointsX.get(i)
-								* mPointsY.get(i + 1));
-				cy = cy
-						+ (mPointsY.get(i) + mPointsY.get(i + 1))
-						* (mPointsY.get(i) * mPointsX.get(i + 1) - mPointsX.get(i)
-								* mPointsY.get(i + 1));
+				double cross = (double) py[i] * px[i + 1] - (double) px[i] * py[i + 1];
+				cx += (px[i] + px[i + 1]) * cross;
+				cy += (py[i] + py[i + 1]) * cross;
 			}
 			double area = (6 * getArea());
 			cx /= area;
@@ -371,27 +1526,168 @@ public class AreaManager {
 			return mPointY;
 		}
 
+		@Override
+		float getBoundLeft() {
+			return mBoundLeft;
+		}
+
+		@Override
+		float getBoundTop() {
+			return mBoundTop;
+		}
+
+		@Override
+		float getBoundRight() {
+			return mBoundRight;
+		}
+
+		@Override
+		float getBoundBottom() {
+			return mBoundBottom;
+		}
+
 		/**
 		 * This is a java port of the W. Randolph Franklin algorithm explained here
 		 * http://www.ecse.rpi.edu/Homepages/wrf/Research/Short_Notes/pnpoly.html
+		 * 
+		 * Runs on the primitive arrays only, no allocation or unboxing per edge.
 		 */
 		@Override
 		public boolean isInArea(float testx, float testy) {
+			// cheap reject before walking the edges
+			if (testx < mBoundLeft || testx > mBoundRight || testy < mBoundTop || testy > mBoundBottom) {
+				return false;
+			}
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
 			int i, j;
 			boolean c = false;
 			for (i = 0, j = mTotalPoints - 1; i < mTotalPoints; j = i++) {
-				if (((mPointsY.get(i) > testy) != (mPointsY.get(j) > testy))
-						&& (testx < (mPointsX.get(j) - mPointsX.get(i))
-								* (testy - mPointsY.get(i))
-								/ (mPointsY.get(j) - mPointsY.get(i))
-								+ mPointsX.get(i)))
+				if (((py[i] > testy) != (py[j] > testy))
+						&& (testx < (px[j] - px[i]) * (testy - py[i])
+								/ (py[j] - py[i]) + px[i]))
 					c = !c;
 			}
 			return c;
 		}
+
+		float distanceTo(float x, float y) {
+			if (isInArea(x, y)) {
+				return 0f;
+			}
+			// closest point on any edge
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
+			float best = Float.MAX_VALUE;
+			for (int i = 0; i < mTotalPoints; i++) {
+				final float ex = px[i + 1] - px[i], ey = py[i + 1] - py[i];
+				final float lengthSq = ex * ex + ey * ey;
+				float t = lengthSq > 0f ? ((x - px[i]) * ex + (y - py[i]) * ey) / lengthSq : 0f;
+				t = Math.max(0f, Math.min(t, 1f));
+				final float dx = px[i] + t * ex - x, dy = py[i] + t * ey - y;
+				best = Math.min(best, dx * dx + dy * dy);
+			}
+			return FloatMath.sqrt(best);
+		}
+
+		@Override
+		boolean intersects(float left, float top, float right, float bottom) {
+			if (!super.intersects(left, top, right, bottom)) {
+				return false;
+			}
+			// an edge crosses or lies in the rect
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
+			for (int i = 0; i < mTotalPoints; i++) {
+				if (segmentIntersects(px[i], py[i], px[i + 1], py[i + 1], left, top, right, bottom)) {
+					return true;
+				}
+			}
+			// otherwise the rect can only lie completely inside
+			return isInArea((left + right) / 2, (top + bottom) / 2);
+		}
+
+		void addToPath(Path path) {
+			path.moveTo(mPointsX[0], mPointsY[0]);
+			for (int i = 1; i < mTotalPoints; i++) {
+				path.lineTo(mPointsX[i], mPointsY[i]);
+			}
+			path.close();
+		}
+
+		@Override
+		int hashGeometry(int h) {
+			h = 31 * super.hashGeometry(h) + mTotalPoints;
+			for (int i = 0; i < mTotalPoints; i++) {
+				h = 31 * h + Float.floatToIntBits(mPointsX[i]);
+				h = 31 * h + Float.floatToIntBits(mPointsY[i]);
+			}
+			return h;
+		}
+
+		@Override
+		boolean covers(float left, float top, float right, float bottom) {
+			if (!isInArea(left, top) || !isInArea(right, top) || !isInArea(left, bottom)
+					|| !isInArea(right, bottom)) {
+				return false;
+			}
+			// corners inside and no edge entering the rect
+			final float[] px = mPointsX;
+			final float[] py = mPointsY;
+			for (int i = 0; i < mTotalPoints; i++) {
+				if (segmentIntersects(px[i], py[i], px[i + 1], py[i + 1], left, top, right, bottom)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// Liang-Barsky clipping of the segment against the rect
+		private static boolean segmentIntersects(float x0, float y0, float x1, float y1,
+				float left, float top, float right, float bottom) {
+			final float dx = x1 - x0, dy = y1 - y0;
+			float t0 = 0f, t1 = 1f;
+			for (int k = 0; k < 4; k++) {
+				final float pk, qk;
+				switch (k) {
+					case 0: pk = -dx; qk = x0 - left; break;
+					case 1: pk = dx; qk = right - x0; break;
+					case 2: pk = -dy; qk = y0 - top; break;
+					default: pk = dy; qk = bottom - y0; break;
+				}
+				if (pk == 0f) {
+					if (qk < 0f) return false;
+				} else {
+					final float r = qk / pk;
+					if (pk < 0f) {
+						if (r > t1) return false;
+						if (r > t0) t0 = r;
+					} else {
+						if (r < t0) return false;
+						if (r < t1) t1 = r;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return number of points of this polygon
+		 */
+		public int getPointCount() {
+			return mTotalPoints;
+		}
+
+		public float getPointX(int i) {
+			return mPointsX[i];
+		}
+
+		public float getPointY(int i) {
+			return mPointsY[i];
+		}
 	}
 	
-	public class RectArea extends Area {
+	public static class RectArea extends Area {
 		private float mBoundLeft;
 		private float mBoundTop;
 		private float mBoundRight;
@@ -421,5 +1717,37 @@ public class AreaManager {
 		public float getOriginY() {
 			return mBoundTop;
 		}
+
+		float getBoundLeft() {
+			return mBoundLeft;
+		}
+
+		float getBoundTop() {
+			return mBoundTop;
+		}
+
+		float getBoundRight() {
+			return mBoundRight;
+		}
+
+		float getBoundBottom() {
+			return mBoundBottom;
+		}
+
+		void addToPath(Path path) {
+			path.addRect(mBoundLeft, mBoundTop, mBoundRight, mBoundBottom, Path.Direction.CW);
+		}
+
+		@Override
+		boolean covers(float left, float top, float right, float bottom) {
+			// the edges themselves are not inside, see isInArea
+			return left > mBoundLeft && right < mBoundRight && top > mBoundTop && bottom < mBoundBottom;
+		}
+
+		float distanceTo(float x, float y) {
+			float deltaX = Math.max(0f, Math.max(mBoundLeft - x, x - mBoundRight));
+			float deltaY = Math.max(0f, Math.max(mBoundTop - y, y - mBoundBottom));
+			return FloatMath.sqrt((deltaX * deltaX) + (deltaY * deltaY));
+		}
 	}
 }
\ No newline at end of file
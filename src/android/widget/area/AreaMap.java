@@ -0,0 +1,37 @@
+package android.widget.area;
+
+import java.util.ArrayList;
+
+import android.util.SparseArray;
+import android.widget.area.AreaManager.Area;
+
+/**
+ * Parsed geometry of one map. Filled by a loader, possibly on a background
+ * thread, and sealed once complete. Sealed instances are shared between all
+ * AreaManagers that loaded the same map through {@link MapCache} and must not
+ * be modified.
+ */
+final class AreaMap {
+
+	final ArrayList<Area> mAreas = new ArrayList<Area>();
+	final SparseArray<Area> mIdToArea = new SparseArray<Area>();
+	AreaIndex mIndex;
+	// MapCache key, names the hit mask cache file
+	String mKey;
+	// built on demand in the background, shared like the index
+	volatile AreaHitMask mHitMask;
+	// built on the first track() call
+	AreaNeighbours mNeighbours;
+
+	void add(Area a) {
+		mAreas.add(a);
+		mIdToArea.put(a.getId(), a);
+	}
+
+	/**
+	 * build the index, no areas may be added afterwards
+	 */
+	void seal() {
+		mIndex = new AreaIndex(mAreas);
+	}
+}
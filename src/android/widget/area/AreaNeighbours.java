@@ -0,0 +1,67 @@
+package android.widget.area;
+
+import java.util.Arrays;
+import java.util.List;
+
+import android.widget.area.AreaManager.Area;
+
+/**
+ * For every area the positions of all other areas whose bounding box
+ * overlaps its own, ascending. Any area containing a point inside the
+ * bounding box of an area is one of its neighbours, which lets
+ * {@link AreaManager#track(float, float)} stay exact while only testing the
+ * neighbours of the last hit.
+ *
+ * Stored as one flat array, the neighbours of position p are
+ * mNeighbours[mStart[p]] to mNeighbours[mStart[p + 1] - 1].
+ */
+final class AreaNeighbours {
+
+	private final int[] mStart;
+	private final int[] mNeighbours;
+
+	AreaNeighbours(List<Area> areas, AreaIndex index) {
+		final int count = areas.size();
+		mStart = new int[count + 1];
+		int[] neighbours = new int[Math.max(16, count * 4)];
+		int size = 0;
+		for (int p = 0; p < count; p++) {
+			mStart[p] = size;
+			final Area a = areas.get(p);
+			final int candidates = index.collect(areas, a.getBoundLeft(), a.getBoundTop(),
+					a.getBoundRight(), a.getBoundBottom());
+			for (int i = 0; i < candidates; i++) {
+				final int position = index.candidate(i);
+				if (position == p) continue;
+				if (size == neighbours.length) {
+					int[] grown = new int[size * 2];
+					System.arraycopy(neighbours, 0, grown, 0, size);
+					neighbours = grown;
+				}
+				neighbours[size++] = position;
+			}
+			Arrays.sort(neighbours, mStart[p], size);
+		}
+		mStart[count] = size;
+		mNeighbours = neighbours;
+	}
+
+	/**
+	 * @return number of positions covered, the list size it was built for
+	 */
+	int getAreaCount() {
+		return mStart.length - 1;
+	}
+
+	int start(int position) {
+		return mStart[position];
+	}
+
+	int end(int position) {
+		return mStart[position + 1];
+	}
+
+	int get(int i) {
+		return mNeighbours[i];
+	}
+}
@@ -0,0 +1,143 @@
+package android.widget.area;
+
+import java.util.List;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.widget.area.AreaManager.Area;
+
+/**
+ * Draws the areas of an {@link AreaManager} on top of the image. Every area
+ * gets one Path, built once per map in image coordinates and drawn under the
+ * image matrix, so zooming, panning and restyling never touch the geometry.
+ *
+ * The style of an area is picked by its state in the manager, see
+ * {@link AreaManager#updateStates(int[], int[])}. A frame only looks at the
+ * areas in the visible rect and draws them grouped by style, so the cost
+ * depends on the visible areas and the palette size, not on the size of the
+ * map or the number of state changes.
+ */
+public final class AreaOverlay {
+
+	private final AreaManager mManager;
+
+	// geometry of the areas, by list position
+	private Path[] mPaths = new Path[0];
+	private List<Area> mAreas;
+	private int mRevision = -1;
+
+	// per frame scratch, grouped positions of the visible areas
+	private int[] mStyleStart = new int[AreaManager.MAX_STATES + 1];
+	private int[] mGrouped = new int[16];
+
+	public AreaOverlay(AreaManager manager) {
+		mManager = manager;
+	}
+
+	private boolean hasPaint() {
+		for (Paint p : mManager.getPalette()) {
+			if (p != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * build the paths when the manager got a different map or new areas
+	 */
+	private void sync() {
+		final int revision = mManager.getRevision();
+		if (revision == mRevision) {
+			return;
+		}
+		final List<Area> areas = mManager.getAreaList();
+		final int count = areas.size();
+		Path[] paths = new Path[count];
+		// areas appended to the same map keep their paths
+		int kept = 0;
+		final int old = Math.min(mPaths.length, count);
+		while (kept < old && areas.get(kept) == mAreas.get(kept)) {
+			kept++;
+		}
+		System.arraycopy(mPaths, 0, paths, 0, kept);
+		for (int i = kept; i < count; i++) {
+			paths[i] = new Path();
+			areas.get(i).addToPath(paths[i]);
+		}
+		mPaths = paths;
+		mAreas = areas;
+		mRevision = revision;
+	}
+
+	/**
+	 * @param canvas
+	 * @param matrix
+	 *            - image to view matrix
+	 * @param visible
+	 *            - visible part of the image, in image coordinates
+	 */
+	public void draw(Canvas canvas, Matrix matrix, RectF visible) {
+		if (!hasPaint()) {
+			return; // nothing to show, don't even build the paths
+		}
+		sync();
+		if (mAreas.isEmpty()) {
+			return;
+		}
+
+		final AreaIndex index = mManager.getIndex();
+		final int count = index.collect(mAreas, visible.left, visible.top, visible.right, visible.bottom);
+		if (count == 0) {
+			return;
+		}
+
+		// counting sort of the visible areas by style
+		final Paint[] palette = mManager.getPalette();
+		final byte[] states = mManager.getStates();
+		final int styles = palette.length;
+		final int[] start = mStyleStart;
+		for (int s = 0; s <= styles; s++) {
+			start[s] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			final int style = states[index.candidate(i)];
+			if (style < styles) {
+				start[style + 1]++;
+			}
+		}
+		for (int s = 0; s < styles; s++) {
+			start[s + 1] += start[s];
+		}
+		if (mGrouped.length < count) {
+			mGrouped = new int[Math.max(count, mGrouped.length * 2)];
+		}
+		final int[] grouped = mGrouped;
+		for (int i = 0; i < count; i++) {
+			final int position = index.candidate(i);
+			final int style = states[position];
+			if (style < styles) {
+				grouped[start[style]++] = position;
+			}
+		}
+		// start[s] now is the end of group s, the start of group s + 1
+
+		final int save = canvas.save();
+		canvas.concat(matrix);
+		int from = 0;
+		for (int s = 0; s < styles; s++) {
+			final int to = start[s];
+			final Paint paint = palette[s];
+			if (paint != null) {
+				for (int i = from; i < to; i++) {
+					canvas.drawPath(mPaths[grouped[i]], paint);
+				}
+			}
+			from = to;
+		}
+		canvas.restoreToCount(save);
+	}
+}
@@ -0,0 +1,104 @@
+package android.widget.area;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+/**
+ * Process wide LRU cache of parsed maps, so every AreaManager showing the
+ * same map shares one copy of the geometry. Only the click handlers stay per
+ * AreaManager.
+ * 
+ * The cache registers itself for onTrimMemory callbacks on ICS and newer, on
+ * older platforms {@link #onLowMemory()} can be forwarded from the
+ * application.
+ */
+public final class MapCache {
+
+	public static final int DEFAULT_MAX_MAPS = 8;
+
+	// ComponentCallbacks2 levels added in API 16, the build target is API 14
+	private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+	private static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+
+	private static final LruCache<String, AreaMap> sCache = new LruCache<String, AreaMap>(DEFAULT_MAX_MAPS);
+
+	private static boolean sRegistered = false;
+
+	private MapCache() {
+	}
+
+	/**
+	 * register for memory callbacks, called by every AreaManager
+	 * 
+	 * @param context
+	 */
+	static synchronized void register(Context context) {
+		if (sRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+			return;
+		}
+		context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+			public void onTrimMemory(int level) {
+				MapCache.onTrimMemory(level);
+			}
+
+			public void onLowMemory() {
+				MapCache.onLowMemory();
+			}
+
+			public void onConfigurationChanged(Configuration newConfig) {
+				// maps don't depend on the configuration
+			}
+		});
+		sRegistered = true;
+	}
+
+	static AreaMap get(String key) {
+		return sCache.get(key);
+	}
+
+	static void put(String key, AreaMap map) {
+		sCache.put(key, map);
+	}
+
+	/**
+	 * drop cached maps depending on the trim level, maps are cheap to reload
+	 * compared to being killed in the background
+	 * 
+	 * @param level
+	 *            - one of the ComponentCallbacks2.TRIM_MEMORY_* levels
+	 */
+	public static void onTrimMemory(int level) {
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+				|| level == TRIM_MEMORY_RUNNING_LOW
+				|| level == TRIM_MEMORY_RUNNING_CRITICAL) {
+			sCache.evictAll();
+		}
+	}
+
+	public static void onLowMemory() {
+		sCache.evictAll();
+	}
+
+	public static void evictAll() {
+		sCache.evictAll();
+	}
+
+	public static int hitCount() {
+		return sCache.hitCount();
+	}
+
+	public static int missCount() {
+		return sCache.missCount();
+	}
+
+	public static int evictionCount() {
+		return sCache.evictionCount();
+	}
+
+	public static int size() {
+		return sCache.size();
+	}
+}
@@ -0,0 +1,179 @@
+package android.widget.area;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Offline compiler turning a maps.xml file into the binary format described
+ * in {@link MapFormat}. Only uses plain java, so it runs on the build machine:
+ *
+ * <pre>
+ * java -cp bin/classes android.widget.area.MapCompiler res/xml/maps.xml res/raw/maps.bin
+ * </pre>
+ *
+ * The result can then be loaded with
+ * {@link AreaManager#loadBinaryMap(int, String)}.
+ */
+public class MapCompiler {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: MapCompiler <maps.xml> <maps.bin>");
+			System.exit(1);
+		}
+		InputStream in = new FileInputStream(args[0]);
+		OutputStream out = new FileOutputStream(args[1]);
+		try {
+			int maps = compile(in, out);
+			System.out.println("compiled " + maps + " map(s) to " + args[1]);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * compile all maps of the xml document
+	 *
+	 * @param xml
+	 * @param out
+	 * @return number of maps written
+	 * @throws IOException
+	 */
+	public static int compile(InputStream xml, OutputStream out) throws IOException {
+		MapHandler handler = new MapHandler();
+		try {
+			SAXParserFactory.newInstance().newSAXParser().parse(xml, handler);
+		} catch (ParserConfigurationException pce) {
+			throw new IOException(pce.toString());
+		} catch (SAXException saxe) {
+			throw new IOException(saxe.toString());
+		}
+
+		// write the map bodies first to know their offsets for the toc
+		ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bodies);
+		int[] offsets = new int[handler.mMaps.size()];
+		for (int m = 0; m < offsets.length; m++) {
+			CompiledMap map = handler.mMaps.get(m);
+			offsets[m] = body.size();
+			body.writeInt(map.mAreas.size());
+			for (CompiledArea area : map.mAreas) {
+				body.writeByte(area.mShape);
+				MapFormat.writeString(body, area.mId);
+				body.writeShort(area.mAttributes.size() / 2);
+				for (String s : area.mAttributes) {
+					MapFormat.writeString(body, s);
+				}
+				body.writeInt(area.mCoords.length);
+				for (float f : area.mCoords) {
+					body.writeFloat(f);
+				}
+			}
+		}
+		body.flush();
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		dos.writeInt(MapFormat.MAGIC);
+		dos.writeShort(MapFormat.VERSION);
+		dos.writeShort(offsets.length);
+		for (int m = 0; m < offsets.length; m++) {
+			MapFormat.writeString(dos, handler.mMaps.get(m).mName);
+			dos.writeInt(offsets[m]);
+		}
+		bodies.writeTo(dos);
+		dos.flush();
+		return handler.mMaps.size();
+	}
+
+	private static class CompiledMap {
+		String mName;
+		ArrayList<CompiledArea> mAreas = new ArrayList<CompiledArea>();
+	}
+
+	private static class CompiledArea {
+		byte mShape;
+		String mId;
+		// key, value, key, value...
+		ArrayList<String> mAttributes = new ArrayList<String>();
+		float[] mCoords;
+	}
+
+	private static class MapHandler extends DefaultHandler {
+		ArrayList<CompiledMap> mMaps = new ArrayList<CompiledMap>();
+		private CompiledMap mCurrent;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			String tag = localName.length() > 0 ? localName : qName;
+			if (tag.equalsIgnoreCase("map")) {
+				String name = attributes.getValue("name");
+				if (name != null) {
+					mCurrent = new CompiledMap();
+					mCurrent.mName = name;
+					mMaps.add(mCurrent);
+				}
+			} else if (mCurrent != null && tag.equalsIgnoreCase("area")) {
+				String shape = attributes.getValue("shape");
+				String coords = attributes.getValue("coords");
+				String id = attributes.getValue("id");
+				if (shape == null || coords == null || id == null) {
+					return;
+				}
+				byte type = MapFormat.shapeOf(shape);
+				float[] values = parseCoords(coords);
+				// same rule as the xml loader, degenerate polygons are dropped
+				if (!MapFormat.isValid(type, values.length)) {
+					return;
+				}
+
+				CompiledArea area = new CompiledArea();
+				area.mShape = type;
+				area.mId = id;
+				area.mCoords = values;
+				for (int i = 0; i < attributes.getLength(); i++) {
+					String key = attributes.getLocalName(i);
+					if (key == null || key.length() == 0) {
+						key = attributes.getQName(i);
+					}
+					if (!key.equals("coords")) {
+						area.mAttributes.add(key);
+						area.mAttributes.add(attributes.getValue(i));
+					}
+				}
+				mCurrent.mAreas.add(area);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			String tag = localName.length() > 0 ? localName : qName;
+			if (tag.equalsIgnoreCase("map")) {
+				mCurrent = null;
+			}
+		}
+
+		private static float[] parseCoords(String coords) {
+			String[] v = coords.split(",");
+			float[] values = new float[v.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Float.parseFloat(v[i].trim());
+			}
+			return values;
+		}
+	}
+}
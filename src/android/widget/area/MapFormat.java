@@ -0,0 +1,104 @@
+package android.widget.area;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the precompiled binary map file written by {@link MapCompiler}
+ * and read by {@link AreaManager#loadBinaryMap(java.io.File, String)}.
+ *
+ * All values are big endian:
+ *
+ * <pre>
+ * file:  int magic, short version, short mapCount, toc[mapCount], map[mapCount]
+ * toc:   string name, int offset (of the map, relative to the end of the toc)
+ * map:   int areaCount, area[areaCount]
+ * area:  byte shape, string id, short attrCount, (string key, string value)[attrCount],
+ *        int coordCount, float[coordCount]
+ * string: unsigned short byteLength, utf-8 bytes
+ * </pre>
+ *
+ * The table of contents lets a loader seek straight to one map without
+ * reading any of the others.
+ *
+ * The "coords" attribute is not stored as a string, the coordinates are
+ * already parsed into the float block.
+ */
+final class MapFormat {
+
+	static final int MAGIC = 0x474D4150; // "GMAP"
+	static final short VERSION = 2;
+
+	static final byte SHAPE_RECT = 0;
+	static final byte SHAPE_CIRCLE = 1;
+	static final byte SHAPE_POLY = 2;
+
+	private static final String CHARSET = "UTF-8";
+
+	private MapFormat() {
+	}
+
+	/**
+	 * @return the shape constant for an html area shape name, or -1
+	 */
+	static byte shapeOf(String shape) {
+		if (shape.equalsIgnoreCase("rect")) {
+			return SHAPE_RECT;
+		}
+		if (shape.equalsIgnoreCase("circle")) {
+			return SHAPE_CIRCLE;
+		}
+		if (shape.equalsIgnoreCase("poly")) {
+			return SHAPE_POLY;
+		}
+		return -1;
+	}
+
+	/**
+	 * the rule both the xml loader and MapCompiler drop areas by, so a
+	 * compiled map holds the same areas as its xml
+	 *
+	 * @return true if the coordinate count fits the shape, polygons need at
+	 *         least three points
+	 */
+	static boolean isValid(byte shape, int coordCount) {
+		switch (shape) {
+			case SHAPE_RECT:
+				return coordCount == 4;
+			case SHAPE_CIRCLE:
+				return coordCount == 3;
+			case SHAPE_POLY:
+				return coordCount >= 6;
+			default:
+				return false;
+		}
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(CHARSET);
+		if (bytes.length > 0xFFFF) {
+			throw new IOException("string too long for map file: " + bytes.length + " bytes");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(ByteBuffer in) throws UnsupportedEncodingException {
+		final int length = in.getShort() & 0xFFFF;
+		if (in.hasArray()) {
+			String value = new String(in.array(), in.arrayOffset() + in.position(), length, CHARSET);
+			in.position(in.position() + length);
+			return value;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	static void skipString(ByteBuffer in) {
+		final int length = in.getShort() & 0xFFFF;
+		in.position(in.position() + length);
+	}
+}
@@ -0,0 +1,313 @@
+package android.widget.image;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+/**
+ * Process wide cache of decoded image sources, bounded in bytes with LRU
+ * eviction. Evicted bitmaps that are not shown anymore go to a reuse pool and
+ * their memory is recycled by later decodes (BitmapFactory.Options.inBitmap,
+ * Honeycomb and newer) instead of allocating a new bitmap.
+ * 
+ * Bitmaps handed out by acquire must be given back with
+ * {@link #release(Bitmap)} once they are not displayed anymore, only released
+ * bitmaps are ever reused.
+ */
+public final class BitmapCache {
+
+	// cache at most an eighth of the heap
+	public static final int DEFAULT_MAX_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+	// bytes of evicted bitmaps kept around for reuse
+	public static final int MAX_POOL_BYTES = DEFAULT_MAX_BYTES / 4;
+
+	// ComponentCallbacks2 levels added in API 16, the build target is API 14
+	private static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+	private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+	private static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+
+	private static final Object sLock = new Object();
+
+	private static final LruCache<String, Entry> sCache = new LruCache<String, Entry>(DEFAULT_MAX_BYTES) {
+		@Override
+		protected int sizeOf(String key, Entry value) {
+			return value.mBytes;
+		}
+
+		@Override
+		protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+			synchronized (sLock) {
+				oldValue.mRemoved = true;
+				if (oldValue.mRefs == 0) {
+					recycleToPool(oldValue.mBitmap);
+				}
+			}
+		}
+	};
+
+	// bitmaps currently handed out, by identity
+	private static final HashMap<Bitmap, Entry> sInUse = new HashMap<Bitmap, Entry>();
+	private static final ArrayList<Bitmap> sPool = new ArrayList<Bitmap>();
+	private static int sPoolBytes = 0;
+	private static int sReuseCount = 0;
+
+	private static boolean sRegistered = false;
+
+	private BitmapCache() {
+	}
+
+	private static final class Entry {
+		final Bitmap mBitmap;
+		final int mBytes;
+		// number of acquire calls without release
+		int mRefs;
+		// no longer in the cache, goes to the pool once released
+		boolean mRemoved;
+
+		Entry(Bitmap bitmap) {
+			mBitmap = bitmap;
+			mBytes = bitmap.getRowBytes() * bitmap.getHeight();
+		}
+	}
+
+	/**
+	 * register for memory callbacks
+	 * 
+	 * @param context
+	 */
+	public static synchronized void register(Context context) {
+		if (sRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+			return;
+		}
+		context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+			public void onTrimMemory(int level) {
+				BitmapCache.onTrimMemory(level);
+			}
+
+			public void onLowMemory() {
+				BitmapCache.onLowMemory();
+			}
+
+			public void onConfigurationChanged(Configuration newConfig) {
+				// decoded sources don't depend on the configuration
+			}
+		});
+		sRegistered = true;
+	}
+
+	/**
+	 * get the decoded bitmap of a drawable resource, decoding it on a miss
+	 * 
+	 * @return the bitmap or null if it can't be decoded
+	 */
+	public static Bitmap acquireResource(Resources res, int resId) {
+		return acquire("res/" + resId, res, resId, null);
+	}
+
+	/**
+	 * get the decoded bitmap of an image file, decoding it on a miss
+	 * 
+	 * @return the bitmap or null if it can't be decoded
+	 */
+	public static Bitmap acquireFile(String path) {
+		return acquire("file/" + path, null, 0, path);
+	}
+
+	private static Bitmap acquire(String key, Resources res, int resId, String path) {
+		Entry entry = sCache.get(key);
+		if (entry != null) {
+			synchronized (sLock) {
+				// an entry evicted while unreferenced is already in the pool
+				if (!entry.mRemoved || entry.mRefs > 0) {
+					addRef(entry);
+					return entry.mBitmap;
+				}
+			}
+		}
+		Bitmap bitmap = decode(res, resId, path);
+		if (bitmap == null) {
+			return null;
+		}
+		entry = new Entry(bitmap);
+		synchronized (sLock) {
+			// referenced before put, an eviction right away must not pool it
+			addRef(entry);
+			if (entry.mBytes <= sCache.maxSize()) {
+				sCache.put(key, entry);
+			} else {
+				// bigger than the whole cache, dropped once released
+				entry.mRemoved = true;
+			}
+		}
+		return bitmap;
+	}
+
+	// called with sLock held
+	private static void addRef(Entry entry) {
+		entry.mRefs++;
+		sInUse.put(entry.mBitmap, entry);
+	}
+
+	/**
+	 * the bitmap is not displayed anymore, it may be reused once it was
+	 * evicted
+	 * 
+	 * @param bitmap
+	 */
+	public static void release(Bitmap bitmap) {
+		synchronized (sLock) {
+			Entry entry = sInUse.get(bitmap);
+			if (entry == null) {
+				return;
+			}
+			if (--entry.mRefs == 0) {
+				sInUse.remove(bitmap);
+				if (entry.mRemoved) {
+					recycleToPool(bitmap);
+				}
+			}
+		}
+	}
+
+	private static Bitmap decode(Resources res, int resId, String path) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		decode(res, resId, path, options);
+		options.inJustDecodeBounds = false;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			// mutable, so the bitmap can be reused itself later on
+			options.inMutable = true;
+			Bitmap reusable = takeFromPool(options.outWidth, options.outHeight);
+			if (reusable != null) {
+				options.inBitmap = reusable;
+				try {
+					Bitmap bitmap = decode(res, resId, path, options);
+					if (bitmap != null) {
+						synchronized (sLock) {
+							sReuseCount++;
+						}
+						return bitmap;
+					}
+				} catch (IllegalArgumentException iae) {
+					// format didn't match after all
+				}
+				options.inBitmap = null;
+				reusable.recycle();
+			}
+		}
+		return decode(res, resId, path, options);
+	}
+
+	private static Bitmap decode(Resources res, int resId, String path, BitmapFactory.Options options) {
+		if (path != null) {
+			return BitmapFactory.decodeFile(path, options);
+		}
+		return BitmapFactory.decodeResource(res, resId, options);
+	}
+
+	/**
+	 * @return a pooled bitmap with exactly this size, reuse before KitKat
+	 *         requires equal dimensions
+	 */
+	private static Bitmap takeFromPool(int width, int height) {
+		synchronized (sLock) {
+			for (int i = 0; i < sPool.size(); i++) {
+				Bitmap bitmap = sPool.get(i);
+				if (bitmap.getWidth() == width && bitmap.getHeight() == height
+						&& bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+					sPool.remove(i);
+					sPoolBytes -= bitmap.getRowBytes() * bitmap.getHeight();
+					return bitmap;
+				}
+			}
+		}
+		return null;
+	}
+
+	// called with sLock held
+	private static void recycleToPool(Bitmap bitmap) {
+		final int bytes = bitmap.getRowBytes() * bitmap.getHeight();
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !bitmap.isMutable() || bytes > MAX_POOL_BYTES) {
+			bitmap.recycle();
+			return;
+		}
+		// oldest pooled bitmaps make room
+		while (sPoolBytes + bytes > MAX_POOL_BYTES && !sPool.isEmpty()) {
+			Bitmap oldest = sPool.remove(0);
+			sPoolBytes -= oldest.getRowBytes() * oldest.getHeight();
+			oldest.recycle();
+		}
+		sPool.add(bitmap);
+		sPoolBytes += bytes;
+	}
+
+	private static void clearPool() {
+		synchronized (sLock) {
+			for (Bitmap bitmap : sPool) {
+				bitmap.recycle();
+			}
+			sPool.clear();
+			sPoolBytes = 0;
+		}
+	}
+
+	/**
+	 * free memory depending on the trim level, displayed bitmaps are kept
+	 * 
+	 * @param level
+	 *            - one of the ComponentCallbacks2.TRIM_MEMORY_* levels
+	 */
+	public static void onTrimMemory(int level) {
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+				|| level == TRIM_MEMORY_RUNNING_LOW
+				|| level == TRIM_MEMORY_RUNNING_CRITICAL) {
+			sCache.evictAll();
+			clearPool();
+		} else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+				|| level == TRIM_MEMORY_RUNNING_MODERATE) {
+			clearPool();
+		}
+	}
+
+	public static void onLowMemory() {
+		sCache.evictAll();
+		clearPool();
+	}
+
+	public static int hitCount() {
+		return sCache.hitCount();
+	}
+
+	public static int missCount() {
+		return sCache.missCount();
+	}
+
+	public static int evictionCount() {
+		return sCache.evictionCount();
+	}
+
+	/**
+	 * @return number of decodes that reused the memory of an evicted bitmap
+	 */
+	public static int reuseCount() {
+		synchronized (sLock) {
+			return sReuseCount;
+		}
+	}
+
+	/**
+	 * @return bytes of decoded bitmaps in the cache
+	 */
+	public static int size() {
+		return sCache.size();
+	}
+}
@@ -0,0 +1,380 @@
+package android.widget.tile;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Draws a large image as a grid of tiles decoded with BitmapRegionDecoder.
+ * Only tiles intersecting the viewport are decoded, at a sample size matching
+ * the current scale, so memory stays bounded by the screen size no matter how
+ * large the source is. Tiles are decoded on a background thread.
+ * 
+ * The sample sizes form an image pyramid: a coarse base level covering the
+ * whole image is decoded once and kept, it is drawn underneath the level
+ * matching the current scale. When the scale moves to another level the
+ * previous level stays visible until the new tiles have arrived, new tiles
+ * fade in on top of it.
+ * 
+ * BitmapRegionDecoder requires Android 2.3.3 (API 10).
+ */
+public class TileManager {
+
+	// edge length of a decoded tile in bitmap pixels
+	public static final int TILE_SIZE = 256;
+	// largest edge of the always resident base level in bitmap pixels
+	public static final int BASE_LEVEL_SIZE = 1024;
+	// duration of the fade in of new tiles
+	public static final long FADE_DURATION = 150;
+
+	// tiles are decoded one at a time, tiles that left the viewport in the
+	// meantime are skipped when their turn comes
+	private static final ExecutorService sDecoder = Executors.newSingleThreadExecutor();
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Tile decoded callback interface
+	 */
+	public interface OnTileLoadedListener {
+		/**
+		 * a tile is ready to draw, called on the ui thread
+		 */
+		void onTileLoaded();
+	}
+
+	private final BitmapRegionDecoder mDecoder;
+	private final int mImageWidth;
+	private final int mImageHeight;
+	private final OnTileLoadedListener mListener;
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	// coarsest level, covers the whole image and is never released
+	private final Level mBaseLevel;
+	// level matching the current scale and the one shown before it
+	private Level mCurrentLevel;
+	private Level mPreviousLevel;
+
+	// scratch objects for draw()
+	private final Matrix mInverse = new Matrix();
+	private final RectF mVisible = new RectF();
+
+	private volatile boolean mReleased = false;
+
+	public TileManager(BitmapRegionDecoder decoder, OnTileLoadedListener listener) {
+		mDecoder = decoder;
+		mImageWidth = decoder.getWidth();
+		mImageHeight = decoder.getHeight();
+		mListener = listener;
+
+		int baseSample = 1;
+		while (Math.max(mImageWidth, mImageHeight) / baseSample > BASE_LEVEL_SIZE) {
+			baseSample *= 2;
+		}
+		mBaseLevel = new Level(baseSample);
+		mCurrentLevel = mBaseLevel;
+	}
+
+	public int getImageWidth() {
+		return mImageWidth;
+	}
+
+	public int getImageHeight() {
+		return mImageHeight;
+	}
+
+	/**
+	 * @return scale at and below which only the base level is drawn, zooming
+	 *         out further shows nothing new
+	 */
+	public float getBaseLevelScale() {
+		return 1f / mBaseLevel.mSampleSize;
+	}
+
+	/**
+	 * @return the largest power of two sample size which still shows at least
+	 *         one bitmap pixel per screen pixel at the given scale
+	 */
+	public static int sampleSizeForScale(float scale) {
+		int sample = 1;
+		while (sample * 2 * scale <= 1f) {
+			sample *= 2;
+		}
+		return sample;
+	}
+
+	/**
+	 * draw the pyramid levels in the viewport and request missing tiles
+	 * 
+	 * @param canvas
+	 * @param imageMatrix
+	 *            - maps image coordinates to canvas coordinates
+	 * @param viewport
+	 *            - visible part of the canvas, e.g. the view bounds offset by
+	 *            the padding the canvas was translated by
+	 * @param scale
+	 *            - current scale factor of the image
+	 * @return true while tiles are fading in and another frame is needed
+	 */
+	public boolean draw(Canvas canvas, Matrix imageMatrix, RectF viewport, float scale) {
+		if (mReleased) return false;
+
+		selectLevel(Math.min(sampleSizeForScale(scale), mBaseLevel.mSampleSize));
+
+		// viewport in image coordinates
+		if (!imageMatrix.invert(mInverse)) return false;
+		mVisible.set(viewport);
+		mInverse.mapRect(mVisible);
+
+		final long now = SystemClock.uptimeMillis();
+		boolean animating = false;
+
+		final int save = canvas.save();
+		canvas.concat(imageMatrix);
+
+		// coarse to fine, finer levels cover the coarser ones
+		animating |= mBaseLevel.draw(canvas, now, false);
+		if (mPreviousLevel != null) {
+			if (mCurrentLevel.isComplete(now)) {
+				mPreviousLevel.release();
+				mPreviousLevel = null;
+			} else {
+				animating |= mPreviousLevel.draw(canvas, now, false);
+			}
+		}
+		if (mCurrentLevel != mBaseLevel) {
+			animating |= mCurrentLevel.draw(canvas, now, true);
+		}
+
+		canvas.restoreToCount(save);
+		return animating;
+	}
+
+	private void selectLevel(int sampleSize) {
+		if (sampleSize == mCurrentLevel.mSampleSize) return;
+
+		if (mPreviousLevel != null) {
+			mPreviousLevel.release();
+		}
+		// keep the old level as a placeholder, the base level is always drawn
+		mPreviousLevel = mCurrentLevel != mBaseLevel ? mCurrentLevel : null;
+		mCurrentLevel = sampleSize == mBaseLevel.mSampleSize ? mBaseLevel : new Level(sampleSize);
+	}
+
+	private void request(final Tile tile) {
+		tile.mWanted = true;
+		// a tile released and requested again before this decode ran has a
+		// newer request, only that one may load it
+		final int request = ++tile.mRequest;
+		sDecoder.execute(new Runnable() {
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				// scrolled away or zoomed to another level in the meantime
+				if (tile.mRequest != request || mReleased) return;
+
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inSampleSize = tile.mSampleSize;
+				final Bitmap bitmap = mDecoder.decodeRegion(tile.mSource, options);
+				sMainHandler.post(new Runnable() {
+					public void run() {
+						if (tile.mRequest != request || mReleased) {
+							if (bitmap != null) bitmap.recycle();
+							return;
+						}
+						tile.mBitmap = bitmap;
+						tile.mLoadedAt = SystemClock.uptimeMillis();
+						if (mListener != null) {
+							mListener.onTileLoaded();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * drop all tiles and close the decoder, the manager can't be used
+	 * afterwards
+	 */
+	public void release() {
+		mReleased = true;
+		mBaseLevel.release();
+		mCurrentLevel.release();
+		if (mPreviousLevel != null) {
+			mPreviousLevel.release();
+		}
+		sDecoder.execute(new Runnable() {
+			public void run() {
+				// after pending decodes, the decoder is not thread confined
+				mDecoder.recycle();
+			}
+		});
+	}
+
+	/**
+	 * one level of the pyramid, the tile grid for one sample size. Tiles are
+	 * only created inside the visible range and dropped when they leave it,
+	 * so a frame costs the visible tiles, not the size of the level.
+	 */
+	private class Level {
+		final int mSampleSize;
+		final int mColumns;
+		final int mRows;
+		// row major, null outside of the visible range
+		final Tile[] mTiles;
+
+		// visible tile range of the last draw, empty before the first one
+		int mFirstColumn = 0, mLastColumn = -1, mFirstRow = 0, mLastRow = -1;
+
+		Level(int sampleSize) {
+			mSampleSize = sampleSize;
+			final int span = TILE_SIZE * sampleSize;
+			mColumns = (mImageWidth + span - 1) / span;
+			mRows = (mImageHeight + span - 1) / span;
+			mTiles = new Tile[mColumns * mRows];
+		}
+
+		private Tile tile(int c, int r) {
+			Tile tile = mTiles[r * mColumns + c];
+			if (tile == null) {
+				final int span = TILE_SIZE * mSampleSize;
+				tile = new Tile(mSampleSize, c * span, r * span,
+						Math.min((c + 1) * span, mImageWidth), Math.min((r + 1) * span, mImageHeight));
+				mTiles[r * mColumns + c] = tile;
+			}
+			return tile;
+		}
+
+		private void drop(int c, int r) {
+			final Tile tile = mTiles[r * mColumns + c];
+			if (tile != null) {
+				tile.release();
+				mTiles[r * mColumns + c] = null;
+			}
+		}
+
+		/**
+		 * @param requestMissing
+		 *            - decode visible tiles that are not loaded yet
+		 * @return true while a tile is fading in
+		 */
+		boolean draw(Canvas canvas, long now, boolean requestMissing) {
+			final boolean base = this == mBaseLevel;
+			final int span = TILE_SIZE * mSampleSize;
+			final int firstColumn, lastColumn, firstRow, lastRow;
+			if (base) {
+				// the base level is small enough to keep all of it
+				firstColumn = firstRow = 0;
+				lastColumn = mColumns - 1;
+				lastRow = mRows - 1;
+			} else {
+				firstColumn = Math.max(0, (int) (mVisible.left / span));
+				lastColumn = Math.min(mColumns - 1, (int) (mVisible.right / span));
+				firstRow = Math.max(0, (int) (mVisible.top / span));
+				lastRow = Math.min(mRows - 1, (int) (mVisible.bottom / span));
+			}
+
+			// tiles of the previous range that went off screen give the
+			// memory back, nothing outside of it is alive
+			for (int r = mFirstRow; r <= mLastRow; r++) {
+				for (int c = mFirstColumn; c <= mLastColumn; c++) {
+					if (r < firstRow || r > lastRow || c < firstColumn || c > lastColumn) {
+						drop(c, r);
+					}
+				}
+			}
+			mFirstColumn = firstColumn;
+			mLastColumn = lastColumn;
+			mFirstRow = firstRow;
+			mLastRow = lastRow;
+
+			boolean animating = false;
+			for (int r = firstRow; r <= lastRow; r++) {
+				for (int c = firstColumn; c <= lastColumn; c++) {
+					final Tile tile = tile(c, r);
+					if (tile.mBitmap != null) {
+						final long age = now - tile.mLoadedAt;
+						if (age < FADE_DURATION) {
+							mPaint.setAlpha((int) (255 * age / FADE_DURATION));
+							animating = true;
+						}
+						canvas.drawBitmap(tile.mBitmap, null, tile.mDestination, mPaint);
+						mPaint.setAlpha(255);
+					} else if (!tile.mWanted && (requestMissing || base)) {
+						request(tile);
+					}
+				}
+			}
+			return animating;
+		}
+
+		/**
+		 * @return true if all tiles of the last drawn range are loaded and
+		 *         faded in
+		 */
+		boolean isComplete(long now) {
+			if (mLastRow < mFirstRow || mLastColumn < mFirstColumn) {
+				return false; // not drawn yet
+			}
+			for (int r = mFirstRow; r <= mLastRow; r++) {
+				for (int c = mFirstColumn; c <= mLastColumn; c++) {
+					final Tile tile = mTiles[r * mColumns + c];
+					if (tile == null || tile.mBitmap == null || now - tile.mLoadedAt < FADE_DURATION) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		void release() {
+			for (int r = mFirstRow; r <= mLastRow; r++) {
+				for (int c = mFirstColumn; c <= mLastColumn; c++) {
+					drop(c, r);
+				}
+			}
+			mLastColumn = mLastRow = -1;
+		}
+	}
+
+	private static class Tile {
+		final int mSampleSize;
+		// region in image coordinates
+		final Rect mSource;
+		final RectF mDestination;
+
+		// set on the ui thread, read by the decoder thread
+		volatile boolean mWanted = false;
+		// bumped by every request and release, stale decodes are dropped
+		volatile int mRequest = 0;
+		// only touched on the ui thread
+		Bitmap mBitmap;
+		long mLoadedAt;
+
+		Tile(int sampleSize, int left, int top, int right, int bottom) {
+			mSampleSize = sampleSize;
+			mSource = new Rect(left, top, right, bottom);
+			mDestination = new RectF(left, top, right, bottom);
+		}
+
+		void release() {
+			mWanted = false;
+			mRequest++;
+			if (mBitmap != null) {
+				mBitmap.recycle();
+				mBitmap = null;
+			}
+		}
+	}
+}